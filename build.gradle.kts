@@ -3,6 +3,7 @@ import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar
 plugins {
     id("java")
     id("com.gradleup.shadow") version "8.3.2"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "me.kalmemarq"
@@ -14,6 +15,8 @@ val log4jVersion = "2.24.0"
 val jacksonVersion = "2.17.2"
 val fastUtilVersion = "8.5.14"
 val imguiVersion = "1.87.0"
+val jmhCoreVersion = "1.37"
+val junitVersion = "5.11.0"
 val lwjglNatives = getNativesLwjgl()
 val imguiNatives = getNativesImGui()
 
@@ -40,6 +43,19 @@ dependencies {
         exclude("org.lwjgl")
     }
     implementation("io.github.spair", "imgui-java-$imguiNatives", imguiVersion)
+
+    testImplementation(platform("org.junit:junit-bom:$junitVersion"))
+    testImplementation("org.junit.jupiter", "junit-jupiter")
+    testRuntimeOnly("org.junit.platform", "junit-platform-launcher")
+}
+
+jmh {
+    jmhVersion.set(jmhCoreVersion)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // ./gradlew jmh -Pjmh.includes=ChunkMesh
+    (project.findProperty("jmh.includes") as String?)?.let { includes.add(it) }
 }
 
 tasks {
@@ -48,6 +64,20 @@ tasks {
         options.release.set(21)
     }
 
+    named<JavaCompile>("compileJmhJava") {
+        options.encoding = "UTF-8"
+        options.release.set(21)
+    }
+
+    compileTestJava {
+        options.encoding = "UTF-8"
+        options.release.set(21)
+    }
+
+    test {
+        useJUnitPlatform()
+    }
+
     named<ShadowJar>("shadowJar") {
         minimize()
     }
@@ -0,0 +1,53 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.World;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+final class BenchmarkWorlds {
+    private BenchmarkWorlds() {
+    }
+
+    static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("rd-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach((path) -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
+
+    // The flat generated terrain plus scattered pillars and holes so meshing and collision see mixed sections
+    static World create(Path directory, int width, int height, int depth) {
+        World world = new World(directory.resolve("level.region"), width, height, depth);
+        Random random = new Random(1234L);
+        int surface = depth * 2 / 3;
+        for (int i = 0; i < width * height / 16; ++i) {
+            int x = random.nextInt(width);
+            int z = random.nextInt(height);
+            int y = surface - 4 + random.nextInt(8);
+            world.setBlockId(x, y, z, world.getBlockId(x, y, z) == 0 ? 1 : 0);
+        }
+        while (world.getPendingLightUpdates() > 0) {
+            world.tick();
+        }
+        return world;
+    }
+}
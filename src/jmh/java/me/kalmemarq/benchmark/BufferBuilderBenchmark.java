@@ -0,0 +1,57 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.render.vertex.BufferBuilder;
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BufferBuilderBenchmark {
+    private static final int VERTICES = 65536;
+
+    private ByteBuffer buffer;
+    private BufferBuilder builder;
+
+    @Setup
+    public void setup() {
+        this.buffer = MemoryUtil.memAlloc(VERTICES * 24);
+        this.builder = new BufferBuilder(MemoryUtil.memAddress(this.buffer));
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtil.memFree(this.buffer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VERTICES)
+    public int packedTerrain() {
+        this.builder.begin();
+        for (int i = 0; i < VERTICES; ++i) {
+            this.builder.packedTerrain(i & 31, (i >> 5) & 31, (i >> 10) & 31, i & 1, (i >> 1) & 1, 1, 0.8f);
+        }
+        return this.builder.end();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VERTICES)
+    public int positionUvColor() {
+        this.builder.begin();
+        for (int i = 0; i < VERTICES; ++i) {
+            this.builder.vertex(i & 31, (i >> 5) & 31, (i >> 10) & 31).uv(i & 1, (i >> 1) & 1).color(0.8f, 0.8f, 0.8f);
+        }
+        return this.builder.end();
+    }
+}
@@ -0,0 +1,78 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.World;
+import me.kalmemarq.render.ChunkBuilder;
+import me.kalmemarq.render.ChunkOcclusionGraph;
+import me.kalmemarq.render.ChunkRendererRegion;
+import me.kalmemarq.render.GreedyMesher;
+import me.kalmemarq.render.vertex.BufferBuilder;
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Mirrors what a ChunkBuilder worker does for one WorldRenderer.Chunk, minus the GL upload
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkMeshBenchmark {
+    @Param({"false", "true"})
+    public boolean greedy;
+
+    private Path directory;
+    private World world;
+    private ChunkRendererRegion region;
+    private ByteBuffer scratch;
+    private BufferBuilder builder;
+    private final GreedyMesher greedyMesher = new GreedyMesher();
+    private final ChunkOcclusionGraph occlusionGraph = new ChunkOcclusionGraph();
+
+    @Setup
+    public void setup() {
+        this.directory = BenchmarkWorlds.createTempDirectory();
+        this.world = BenchmarkWorlds.create(this.directory, 128, 128, 64);
+        this.region = new ChunkRendererRegion(this.world, 1, 1, 1);
+        this.scratch = MemoryUtil.memAlloc(ChunkBuilder.SCRATCH_BUFFER_SIZE);
+        this.builder = new BufferBuilder(MemoryUtil.memAddress(this.scratch));
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtil.memFree(this.scratch);
+        this.world.close();
+        BenchmarkWorlds.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public int buildMesh() {
+        int vertexCount = 0;
+        for (int layer = 0; layer < ChunkBuilder.LAYER_COUNT; ++layer) {
+            if (this.greedy) {
+                vertexCount += this.greedyMesher.buildLayer(this.region, 1, 1, 1, this.builder, layer);
+            } else {
+                vertexCount += ChunkBuilder.buildLayer(this.region, 1, 1, 1, this.builder, layer);
+            }
+        }
+        return vertexCount;
+    }
+
+    @Benchmark
+    public ChunkRendererRegion snapshotRegion() {
+        return new ChunkRendererRegion(this.world, 1, 1, 1);
+    }
+
+    @Benchmark
+    public long buildOcclusionGraph() {
+        return this.occlusionGraph.build(this.region, 1, 1, 1);
+    }
+}
@@ -0,0 +1,76 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.World;
+import me.kalmemarq.util.Box;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Run with -prof gc to see the allocation rate of each path
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CollisionBenchmark {
+    private Path directory;
+    private World world;
+    private final Box box = new Box(0, 0, 0, 0, 0, 0);
+    private final Box sweep = new Box(0, 0, 0, 0, 0, 0);
+
+    @Setup
+    public void setup() {
+        this.directory = BenchmarkWorlds.createTempDirectory();
+        this.world = BenchmarkWorlds.create(this.directory, 128, 128, 64);
+        float surface = this.world.depth * 2 / 3 + 1;
+        this.box.minX = 40.2f;
+        this.box.minY = surface + 0.05f;
+        this.box.minZ = 40.2f;
+        this.box.maxX = this.box.minX + 0.6f;
+        this.box.maxY = this.box.minY + 1.8f;
+        this.box.maxZ = this.box.minZ + 0.6f;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.world.close();
+        BenchmarkWorlds.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public void getCubes(Blackhole blackhole) {
+        Box area = this.box.grow(0.1f, -0.2f, 0.1f);
+        float xd = 0.1f;
+        float yd = -0.2f;
+        float zd = 0.1f;
+        List<Box> boxes = this.world.getCubes(area);
+        for (Box cube : boxes) {
+            yd = cube.clipYCollide(this.box, yd);
+        }
+        for (Box cube : boxes) {
+            xd = cube.clipXCollide(this.box, xd);
+        }
+        for (Box cube : boxes) {
+            zd = cube.clipZCollide(this.box, zd);
+        }
+        blackhole.consume(xd);
+        blackhole.consume(yd);
+        blackhole.consume(zd);
+    }
+
+    @Benchmark
+    public void clipCollide(Blackhole blackhole) {
+        Box area = this.box.grow(0.1f, -0.2f, 0.1f, this.sweep);
+        blackhole.consume(this.world.clipYCollide(area, this.box, -0.2f));
+        blackhole.consume(this.world.clipXCollide(area, this.box, 0.1f));
+        blackhole.consume(this.world.clipZCollide(area, this.box, 0.1f));
+    }
+}
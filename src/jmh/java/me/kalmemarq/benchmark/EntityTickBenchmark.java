@@ -0,0 +1,68 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.World;
+import me.kalmemarq.entity.EntityTicker;
+import me.kalmemarq.entity.ZombieStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// One zombie tick phase for each population and thread count, compare threads=1 against the rest for scaling
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntityTickBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int zombies;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path directory;
+    private World world;
+    private EntityTicker ticker;
+    private ZombieStore store;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.directory = BenchmarkWorlds.createTempDirectory();
+        this.world = BenchmarkWorlds.create(this.directory, 256, 256, 64);
+        this.ticker = new EntityTicker(this.threads);
+        this.store = new ZombieStore(this.world, this.zombies);
+        for (int i = 0; i < this.zombies; ++i) {
+            this.store.add(i);
+        }
+    }
+
+    // Zombies that fell out of the world would make later iterations cheaper than earlier ones
+    @Setup(Level.Iteration)
+    public void respawn() {
+        for (int i = 0; i < this.store.size(); ++i) {
+            if (this.store.getY(i) < ZombieStore.REMOVAL_Y) {
+                this.store.goToRandomPosition(i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.ticker.close();
+        this.world.close();
+        BenchmarkWorlds.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public void tick() {
+        this.ticker.tick(this.store.size(), this.store::tick);
+    }
+}
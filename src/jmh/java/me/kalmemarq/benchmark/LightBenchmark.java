@@ -0,0 +1,58 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.LightEngine;
+import me.kalmemarq.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// LightEngine replaced World.calculateHeightMap; initialize is the full scan, placeAndRemove the incremental path
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LightBenchmark {
+    @Param({"256", "512"})
+    public int size;
+
+    private Path directory;
+    private World world;
+    private LightEngine lightEngine;
+
+    @Setup
+    public void setup() {
+        this.directory = BenchmarkWorlds.createTempDirectory();
+        this.world = BenchmarkWorlds.create(this.directory, this.size, this.size, 64);
+        this.lightEngine = new LightEngine(this.world);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.world.close();
+        BenchmarkWorlds.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public LightEngine initialize() {
+        this.lightEngine.initialize();
+        return this.lightEngine;
+    }
+
+    @Benchmark
+    public int placeAndRemove() {
+        int y = this.world.depth - 1;
+        this.world.setBlockId(17, y, 17, 1);
+        this.world.tick();
+        this.world.setBlockId(17, y, 17, 0);
+        this.world.tick();
+        return this.world.getPendingLightUpdates();
+    }
+}
@@ -0,0 +1,103 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PersistenceBenchmark {
+    @Param({"256", "1024"})
+    public int size;
+
+    private Path directory;
+    private World world;
+    private int editCounter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.directory = BenchmarkWorlds.createTempDirectory();
+        this.world = BenchmarkWorlds.create(this.directory, this.size, this.size, 64);
+        this.world.save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.world.close();
+        BenchmarkWorlds.deleteDirectory(this.directory);
+    }
+
+    // A freshly generated world has no region file yet, so every section gets encoded
+    @Benchmark
+    public boolean saveFull(FreshWorld freshWorld) {
+        return freshWorld.world.save();
+    }
+
+    @Benchmark
+    public boolean saveAfterEdit() {
+        int y = this.world.depth * 2 / 3;
+        this.world.setBlockId(this.editCounter++ % this.size, y, 3, 0);
+        return this.world.save();
+    }
+
+    // Opens the region file and builds the light data, which decodes every section below the sky
+    @Benchmark
+    public World load(LoadedWorld loadedWorld) {
+        loadedWorld.world = new World(loadedWorld.directory.resolve("level.region"), this.size, this.size, 64);
+        return loadedWorld.world;
+    }
+
+    @State(Scope.Thread)
+    public static class FreshWorld {
+        private Path directory;
+        private World world;
+
+        @Setup(Level.Invocation)
+        public void setup(PersistenceBenchmark benchmark) {
+            this.directory = BenchmarkWorlds.createTempDirectory();
+            this.world = new World(this.directory.resolve("level.region"), benchmark.size, benchmark.size, 64);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            this.world.close();
+            BenchmarkWorlds.deleteDirectory(this.directory);
+        }
+    }
+
+    // A copy of the saved world, so the load never opens the journal the trial world is still writing
+    @State(Scope.Thread)
+    public static class LoadedWorld {
+        private Path directory;
+        private World world;
+
+        @Setup(Level.Invocation)
+        public void setup(PersistenceBenchmark benchmark) throws IOException {
+            this.directory = BenchmarkWorlds.createTempDirectory();
+            Files.copy(benchmark.directory.resolve("level.region"), this.directory.resolve("level.region"));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            if (this.world != null) {
+                this.world.close();
+                this.world = null;
+            }
+            BenchmarkWorlds.deleteDirectory(this.directory);
+        }
+    }
+}
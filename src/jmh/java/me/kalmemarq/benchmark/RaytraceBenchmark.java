@@ -0,0 +1,49 @@
+package me.kalmemarq.benchmark;
+
+import me.kalmemarq.World;
+import me.kalmemarq.util.BlockHitResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RaytraceBenchmark {
+    private Path directory;
+    private World world;
+    private double eyeY;
+
+    @Setup
+    public void setup() {
+        this.directory = BenchmarkWorlds.createTempDirectory();
+        this.world = BenchmarkWorlds.create(this.directory, 128, 128, 64);
+        this.eyeY = this.world.depth * 2 / 3 + 2.62;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.world.close();
+        BenchmarkWorlds.deleteDirectory(this.directory);
+    }
+
+    // Player reach, looking down at the ground in front of the camera
+    @Benchmark
+    public BlockHitResult hitGround() {
+        return this.world.raytraceBlock(64.5, this.eyeY, 64.5, 69.5, this.eyeY - 6.0, 68.5);
+    }
+
+    // Looking at the horizon, the ray walks the full reach without hitting anything
+    @Benchmark
+    public BlockHitResult miss() {
+        return this.world.raytraceBlock(64.5, this.eyeY + 8.0, 64.5, 70.5, this.eyeY + 9.0, 70.5);
+    }
+}
@@ -1,34 +1,32 @@
 package me.kalmemarq;
 
 import me.kalmemarq.render.vertex.BufferBuilder;
-import me.kalmemarq.render.MatrixStack;
 import me.kalmemarq.util.BlockHitResult;
 import me.kalmemarq.util.Box;
 import me.kalmemarq.util.Direction;
 import me.kalmemarq.util.MathUtils;
-import org.joml.Matrix4f;
 import org.joml.Vector3d;
 
 public class Block {
     public static final Box VOXEL_SHAPE = new Box(0, 0, 0, 1, 1, 1);
     public static final Block BLOCK = new Block();
-
-    public static void render(World world, MatrixStack matrices, BufferBuilder builder, int x, int y, int z, boolean isGrass, int layer) {
-        float x0 = 0f;
-        float y0 = 0f;
-        float z0 = 0f;
-        float x1 = 1f;
-        float y1 = 1f;
-        float z1 = 1f;
-
-        int u = isGrass ? 0 : 16;
-        int v = 0;
-        float u0 = u / 256.0f;
-        float v0 = v / 256.0f;
-        float u1 = (u + 16) / 256.0f;
-        float v1 = (v + 16) / 256.0f;
-
-        Matrix4f matrix = matrices.peek();
+    public static final int GRASS_TILE = 0;
+    public static final int STONE_TILE = 1;
+
+    public static void render(BlockView world, BufferBuilder builder, int x, int y, int z, boolean isGrass, int layer) {
+        int x0 = x & (World.CHUNK_SIZE - 1);
+        int y0 = y & (World.CHUNK_SIZE - 1);
+        int z0 = z & (World.CHUNK_SIZE - 1);
+        int x1 = x0 + 1;
+        int y1 = y0 + 1;
+        int z1 = z0 + 1;
+
+        // UVs are tile local, the terrain shader wraps them into the atlas tile
+        int tile = isGrass ? GRASS_TILE : STONE_TILE;
+        int u0 = 0;
+        int v0 = 0;
+        int u1 = 1;
+        int v1 = 1;
 
         boolean shouldRenderBottom = world.getBlockId(x, y - 1, z) == 0;
         boolean shouldRenderTop = world.getBlockId(x, y + 1, z) == 0;
@@ -40,60 +38,60 @@ public class Block {
         if (shouldRenderBottom) {
             float light = world.getBrigthness(x, y - 1, z);
             if (light == 1.0f ^ layer == 1) {
-                builder.vertex(matrix, x0, y0, z0).uv(u0, v0).color(light, light, light);
-                builder.vertex(matrix, x1, y0, z0).uv(u1, v0).color(light, light, light);
-                builder.vertex(matrix, x1, y0, z1).uv(u1, v1).color(light, light, light);
-                builder.vertex(matrix, x0, y0, z1).uv(u0, v1).color(light, light, light);
+                builder.packedTerrain(x0, y0, z0, u0, v0, tile, light);
+                builder.packedTerrain(x1, y0, z0, u1, v0, tile, light);
+                builder.packedTerrain(x1, y0, z1, u1, v1, tile, light);
+                builder.packedTerrain(x0, y0, z1, u0, v1, tile, light);
             }
         }
 
         if (shouldRenderTop) {
             float light = world.getBrigthness(x, y + 1, z);
             if (light == 1.0f ^ layer == 1) {
-                builder.vertex(matrix, x0, y1, z0).uv(u0, v0).color(light, light, light);
-                builder.vertex(matrix, x0, y1, z1).uv(u0, v1).color(light, light, light);
-                builder.vertex(matrix, x1, y1, z1).uv(u1, v1).color(light, light, light);
-                builder.vertex(matrix, x1, y1, z0).uv(u1, v0).color(light, light, light);
+                builder.packedTerrain(x0, y1, z0, u0, v0, tile, light);
+                builder.packedTerrain(x0, y1, z1, u0, v1, tile, light);
+                builder.packedTerrain(x1, y1, z1, u1, v1, tile, light);
+                builder.packedTerrain(x1, y1, z0, u1, v0, tile, light);
             }
         }
 
         if (shouldRenderNorth) {
             float light = world.getBrigthness(x, y, z - 1) * 0.8f;
             if (light == 0.8f ^ layer == 1) {
-                builder.vertex(matrix, x0, y0, z0).uv(u1, v1).color(light, light, light);
-                builder.vertex(matrix, x0, y1, z0).uv(u1, v0).color(light, light, light);
-                builder.vertex(matrix, x1, y1, z0).uv(u0, v0).color(light, light, light);
-                builder.vertex(matrix, x1, y0, z0).uv(u0, v1).color(light, light, light);
+                builder.packedTerrain(x0, y0, z0, u1, v1, tile, light);
+                builder.packedTerrain(x0, y1, z0, u1, v0, tile, light);
+                builder.packedTerrain(x1, y1, z0, u0, v0, tile, light);
+                builder.packedTerrain(x1, y0, z0, u0, v1, tile, light);
             }
         }
 
         if (shouldRenderSouth) {
             float light = world.getBrigthness(x, y, z + 1) * 0.8f;
             if (light == 0.8f ^ layer == 1) {
-                builder.vertex(matrix, x0, y0, z1).uv(u0, v1).color(light, light, light);
-                builder.vertex(matrix, x1, y0, z1).uv(u1, v1).color(light, light, light);
-                builder.vertex(matrix, x1, y1, z1).uv(u1, v0).color(light, light, light);
-                builder.vertex(matrix, x0, y1, z1).uv(u0, v0).color(light, light, light);
+                builder.packedTerrain(x0, y0, z1, u0, v1, tile, light);
+                builder.packedTerrain(x1, y0, z1, u1, v1, tile, light);
+                builder.packedTerrain(x1, y1, z1, u1, v0, tile, light);
+                builder.packedTerrain(x0, y1, z1, u0, v0, tile, light);
             }
         }
 
         if (shouldRenderWest) {
             float light = world.getBrigthness(x - 1, y, z) * 0.6f;
            if (light == 0.6f ^ layer == 1) {
-               builder.vertex(matrix, x0, y0, z0).uv(u0, v1).color(light, light, light);
-               builder.vertex(matrix, x0, y0, z1).uv(u1, v1).color(light, light, light);
-               builder.vertex(matrix, x0, y1, z1).uv(u1, v0).color(light, light, light);
-               builder.vertex(matrix, x0, y1, z0).uv(u0, v0).color(light, light, light);
+               builder.packedTerrain(x0, y0, z0, u0, v1, tile, light);
+               builder.packedTerrain(x0, y0, z1, u1, v1, tile, light);
+               builder.packedTerrain(x0, y1, z1, u1, v0, tile, light);
+               builder.packedTerrain(x0, y1, z0, u0, v0, tile, light);
            }
         }
 
         if (shouldRenderEast) {
             float light = world.getBrigthness(x + 1, y, z) * 0.6f;
             if (light == 0.6f ^ layer == 1) {
-                builder.vertex(matrix, x1, y0, z0).uv(u1, v1).color(light, light, light);
-                builder.vertex(matrix, x1, y1, z0).uv(u1, v0).color(light, light, light);
-                builder.vertex(matrix, x1, y1, z1).uv(u0, v0).color(light, light, light);
-                builder.vertex(matrix, x1, y0, z1).uv(u0, v1).color(light, light, light);
+                builder.packedTerrain(x1, y0, z0, u1, v1, tile, light);
+                builder.packedTerrain(x1, y1, z0, u1, v0, tile, light);
+                builder.packedTerrain(x1, y1, z1, u0, v0, tile, light);
+                builder.packedTerrain(x1, y0, z1, u0, v1, tile, light);
             }
         }
     }
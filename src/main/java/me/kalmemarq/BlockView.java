@@ -0,0 +1,9 @@
+package me.kalmemarq;
+
+public interface BlockView {
+    int getBlockId(int x, int y, int z);
+
+    float getBrigthness(int x, int y, int z);
+
+    boolean isTopLayer(int y);
+}
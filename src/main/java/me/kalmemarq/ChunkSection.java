@@ -0,0 +1,191 @@
+package me.kalmemarq;
+
+import java.nio.ByteBuffer;
+
+public class ChunkSection {
+    public static final int VOLUME = World.CHUNK_SIZE * World.CHUNK_SIZE * World.CHUNK_SIZE;
+
+    private byte[] palette;
+    private int[] counts;
+    private int paletteSize;
+    // 0 while the whole section is a single value, otherwise 1, 2, 4 or 8 so entries never straddle two longs
+    private int bits;
+    private int indexShift;
+    private long[] data;
+    // Set once a save snapshot holds this section, from then on it is never modified and writers replace it with a copy
+    private boolean shared;
+
+    public ChunkSection(int id) {
+        this.setUniform(id);
+    }
+
+    public static int getIndex(int localX, int localY, int localZ) {
+        return (((localY << World.CHUNK_SHIFT) | localZ) << World.CHUNK_SHIFT) | localX;
+    }
+
+    public void share() {
+        this.shared = true;
+    }
+
+    public boolean isShared() {
+        return this.shared;
+    }
+
+    public ChunkSection copy() {
+        ChunkSection copy = new ChunkSection(this.palette[0]);
+        if (this.bits != 0) {
+            copy.palette = this.palette.clone();
+            copy.counts = this.counts.clone();
+            copy.paletteSize = this.paletteSize;
+            copy.bits = this.bits;
+            copy.indexShift = this.indexShift;
+            copy.data = this.data.clone();
+        }
+        return copy;
+    }
+
+    public boolean isUniform() {
+        return this.bits == 0;
+    }
+
+    public int get(int index) {
+        if (this.bits == 0) return this.palette[0];
+        return this.palette[this.getPaletteIndex(index)];
+    }
+
+    public void set(int index, int id) {
+        if (this.bits == 0) {
+            if (this.palette[0] == (byte) id) return;
+            this.resize(1);
+        }
+
+        int oldPaletteIndex = this.getPaletteIndex(index);
+        if (this.palette[oldPaletteIndex] == (byte) id) return;
+
+        int newPaletteIndex = this.getOrAddPaletteIndex(id);
+        this.setPaletteIndex(index, newPaletteIndex);
+        --this.counts[oldPaletteIndex];
+        ++this.counts[newPaletteIndex];
+
+        if (this.counts[newPaletteIndex] == VOLUME) {
+            this.setUniform(id);
+        }
+    }
+
+    public int getSerializedSize() {
+        return 2 + this.paletteSize + (this.data != null ? 8 * this.data.length : 0);
+    }
+
+    public void write(ByteBuffer buffer) {
+        buffer.put((byte) this.bits);
+        buffer.put((byte) (this.paletteSize - 1));
+        buffer.put(this.palette, 0, this.paletteSize);
+        if (this.data != null) {
+            for (long value : this.data) {
+                buffer.putLong(value);
+            }
+        }
+    }
+
+    public static ChunkSection read(ByteBuffer buffer) {
+        int bits = buffer.get();
+        int paletteSize = (buffer.get() & 0xFF) + 1;
+        if (bits == 0) {
+            return new ChunkSection(buffer.get());
+        }
+
+        if (bits != 1 && bits != 2 && bits != 4 && bits != 8) {
+            throw new IllegalStateException("Invalid section bit width " + bits);
+        }
+
+        ChunkSection section = new ChunkSection(0);
+        section.resize(bits);
+        buffer.get(section.palette, 0, paletteSize);
+        section.paletteSize = paletteSize;
+        section.counts[0] = 0;
+        for (int i = 0; i < section.data.length; ++i) {
+            section.data[i] = buffer.getLong();
+        }
+        for (int index = 0; index < VOLUME; ++index) {
+            ++section.counts[section.getPaletteIndex(index)];
+        }
+        return section;
+    }
+
+    public long getMemoryUsage() {
+        long size = 40 + 16 + this.palette.length + 16 + 4L * this.counts.length;
+        if (this.data != null) {
+            size += 16 + 8L * this.data.length;
+        }
+        return size;
+    }
+
+    private void setUniform(int id) {
+        this.palette = new byte[]{(byte) id};
+        this.counts = new int[]{VOLUME};
+        this.paletteSize = 1;
+        this.bits = 0;
+        this.indexShift = 0;
+        this.data = null;
+    }
+
+    private int getOrAddPaletteIndex(int id) {
+        int freeIndex = -1;
+        for (int i = 0; i < this.paletteSize; ++i) {
+            if (this.palette[i] == (byte) id) {
+                return i;
+            }
+
+            if (freeIndex == -1 && this.counts[i] == 0) {
+                freeIndex = i;
+            }
+        }
+
+        if (freeIndex != -1) {
+            this.palette[freeIndex] = (byte) id;
+            return freeIndex;
+        }
+
+        if (this.paletteSize == 1 << this.bits) {
+            this.resize(this.bits * 2);
+        }
+
+        this.palette[this.paletteSize] = (byte) id;
+        return this.paletteSize++;
+    }
+
+    private void resize(int newBits) {
+        int newIndexShift = Integer.numberOfTrailingZeros(64 / newBits);
+        long[] newData = new long[VOLUME >>> newIndexShift];
+
+        if (this.data != null) {
+            for (int index = 0; index < VOLUME; ++index) {
+                int value = this.getPaletteIndex(index);
+                newData[index >>> newIndexShift] |= (long) value << ((index & ((1 << newIndexShift) - 1)) * newBits);
+            }
+        }
+
+        byte[] newPalette = new byte[1 << newBits];
+        int[] newCounts = new int[1 << newBits];
+        System.arraycopy(this.palette, 0, newPalette, 0, this.paletteSize);
+        System.arraycopy(this.counts, 0, newCounts, 0, this.paletteSize);
+
+        this.palette = newPalette;
+        this.counts = newCounts;
+        this.bits = newBits;
+        this.indexShift = newIndexShift;
+        this.data = newData;
+    }
+
+    private int getPaletteIndex(int index) {
+        int shift = (index & ((1 << this.indexShift) - 1)) * this.bits;
+        return (int) (this.data[index >>> this.indexShift] >>> shift) & ((1 << this.bits) - 1);
+    }
+
+    private void setPaletteIndex(int index, int value) {
+        int shift = (index & ((1 << this.indexShift) - 1)) * this.bits;
+        long mask = ((1L << this.bits) - 1L) << shift;
+        int i = index >>> this.indexShift;
+        this.data[i] = (this.data[i] & ~mask) | ((long) value << shift);
+    }
+}
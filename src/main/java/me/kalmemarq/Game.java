@@ -1,31 +1,44 @@
 package me.kalmemarq;
 
+import me.kalmemarq.entity.Entity;
 import me.kalmemarq.entity.PlayerEntity;
-import me.kalmemarq.entity.ZombieEntity;
+import me.kalmemarq.entity.PlayerInput;
+import me.kalmemarq.entity.ZombieSnapshot;
+import me.kalmemarq.entity.ZombieStore;
 import me.kalmemarq.entity.model.ZombieModel;
+import me.kalmemarq.render.ArenaAllocator;
 import me.kalmemarq.render.DrawMode;
+import me.kalmemarq.render.FrameCapture;
 import me.kalmemarq.render.Framebuffer;
 import me.kalmemarq.render.Frustum;
+import me.kalmemarq.render.GpuTimerQueries;
 import me.kalmemarq.render.ImGuiLayer;
 import me.kalmemarq.render.NativeImage;
-import me.kalmemarq.render.NativeImage.Mirroring;
-import me.kalmemarq.render.NativeImage.PixelFormat;
+import me.kalmemarq.render.ProgramBinaryCache;
 import me.kalmemarq.render.Shader;
+import me.kalmemarq.render.ShaderVariants;
 import me.kalmemarq.render.Tessellator;
 import me.kalmemarq.render.Texture;
 import me.kalmemarq.render.Window;
 import me.kalmemarq.render.WorldRenderer;
+import me.kalmemarq.render.ZombieRenderer;
 import me.kalmemarq.render.vertex.BufferBuilder;
+import me.kalmemarq.render.vertex.QuadIndexBuffer;
+import me.kalmemarq.render.vertex.StreamingVertexBuffer;
 import me.kalmemarq.render.vertex.VertexBuffer;
 import me.kalmemarq.render.vertex.VertexLayout;
 import me.kalmemarq.util.BlockHitResult;
 import me.kalmemarq.util.Box;
 import me.kalmemarq.util.IOUtils;
 import me.kalmemarq.util.Keybinding;
+import me.kalmemarq.util.MathUtils;
+import me.kalmemarq.util.Profiler;
+import me.kalmemarq.util.StartupTimeline;
 import me.kalmemarq.util.TimeUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joml.Matrix4f;
+import org.joml.Vector3d;
 import org.lwjgl.Version;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL11;
@@ -38,15 +51,21 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
 import imgui.ImGui;
+import imgui.flag.ImGuiTreeNodeFlags;
 import imgui.flag.ImGuiWindowFlags;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 public class Game implements Runnable, Window.EventHandler {
     private static final Logger LOGGER = LogManager.getLogger("Main");
@@ -61,9 +80,9 @@ public class Game implements Runnable, Window.EventHandler {
     private Texture terrainTexture;
     private Texture charTexture;
     private Shader selectionShader;
-    private Shader terrainShader;
-    private Shader terrainShadowShader;
-    private Shader entityShader;
+    private ShaderVariants terrainShaders;
+    private Shader zombieShader;
+    private ZombieRenderer zombieRenderer;
     private final double[] mouse = {0, 0, 0, 0};
     private final Matrix4f projection = new Matrix4f();
     private final Matrix4f modelView = new Matrix4f();
@@ -74,12 +93,18 @@ public class Game implements Runnable, Window.EventHandler {
     private BlockHitResult blockHitResult;
     private VertexBuffer blockSelectionVertexBuffer;
     private Framebuffer framebuffer;
-    private final List<ZombieEntity> zombies = new ArrayList<>();
-    private final ZombieModel zombieModel = new ZombieModel();
+    private ZombieStore zombies;
+    private ZombieModel zombieModel;
+    private Simulation simulation;
+    private final Profiler profiler = new Profiler("Render");
+    private GpuTimerQueries gpuTimerQueries;
+    private FrameCapture frameCapture;
+    // The camera turns with the mouse on the render thread, the player picks the angles up with its next input
+    private float cameraYaw = PlayerInput.NONE.yaw();
+    private float cameraPitch = PlayerInput.NONE.pitch();
     private boolean renderEntityHitboxes = false;
     private boolean rendeInfoOverlay;
     private int fps;
-    private int tps;
 
     public Game() {
         instance = this;
@@ -95,8 +120,36 @@ public class Game implements Runnable, Window.EventHandler {
 
     @Override
     public void run() {
-        this.window = new Window(1024, 768, VERSION);
-        this.window.setIcon();
+        StartupTimeline startup = new StartupTimeline();
+        Window.configure();
+
+        // Everything that does not need the GL context is read and decoded on workers while the window is created,
+        // only the GL objects are made here on the context thread
+        AtomicInteger workerId = new AtomicInteger();
+        ExecutorService startupWorkers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), (runnable) -> {
+            Thread thread = new Thread(runnable, "Startup Worker #" + workerId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Path resourcesPath = IOUtils.getResourcesPath();
+        CompletableFuture<World> worldFuture = startup.supplyAsync("load world", () -> new World(256, 256, 64), startupWorkers);
+        List<CompletableFuture<NativeImage>> iconFutures = new ArrayList<>();
+        for (String icon : Window.ICONS) {
+            iconFutures.add(startup.supplyAsync("decode " + icon, () -> Window.readIcon(icon), startupWorkers));
+        }
+        CompletableFuture<NativeImage> terrainImageFuture = startup.supplyAsync("decode terrain.png", () -> NativeImage.read(resourcesPath.resolve("textures/terrain.png")), startupWorkers);
+        CompletableFuture<NativeImage> charImageFuture = startup.supplyAsync("decode char.png", () -> NativeImage.read(resourcesPath.resolve("textures/char.png")), startupWorkers);
+        CompletableFuture<Shader.Sources> selectionSources = startup.supplyAsync("read selection shader", () -> Shader.readSources("selection"), startupWorkers);
+        CompletableFuture<ShaderVariants> terrainVariants = startup.supplyAsync("read terrain shader", () -> ShaderVariants.read("terrain"), startupWorkers);
+        CompletableFuture<Shader.Sources> zombieSources = startup.supplyAsync("read zombie shader", () -> Shader.readSources("zombie"), startupWorkers);
+        CompletableFuture<ZombieModel> zombieModelFuture = startup.supplyAsync("parse zombie model", ZombieModel::new, startupWorkers);
+
+        this.window = startup.time("create window", () -> new Window(1024, 768, VERSION));
+        List<NativeImage> icons = new ArrayList<>();
+        for (CompletableFuture<NativeImage> iconFuture : iconFutures) {
+            icons.add(startup.join("icons", iconFuture));
+        }
+        startup.time("set icon", () -> this.window.setIcon(icons));
         this.window.addEventHandler(this);
 
         LOGGER.info("LWJGL {}", Version.getVersion());
@@ -107,96 +160,149 @@ public class Game implements Runnable, Window.EventHandler {
         Callback debugMessageCallback = GLUtil.setupDebugMessageCallback(System.err);
         GL45.glDebugMessageControl(GL45.GL_DEBUG_SOURCE_API, GL45.GL_DEBUG_TYPE_OTHER, GL45.GL_DONT_CARE, 0x20071, false);
 
-        this.framebuffer = new Framebuffer(this.window.getWidth(), this.window.getHeight());
+        this.profiler.bindToCurrentThread();
+        this.gpuTimerQueries = new GpuTimerQueries();
+        this.profiler.setGpuTimer(this.gpuTimerQueries);
+
+        startup.time("create framebuffer", () -> {
+            this.framebuffer = new Framebuffer(this.window.getWidth(), this.window.getHeight());
+            this.frameCapture = new FrameCapture(Integer.getInteger("whatDoesMcMean.captureInterval", 2));
+        });
 
         this.terrainTexture = new Texture();
-        this.terrainTexture.load(IOUtils.getResourcesPath().resolve("textures/terrain.png"));
         this.charTexture = new Texture();
-        this.charTexture.load(IOUtils.getResourcesPath().resolve("textures/char.png"));
-
-        this.selectionShader = new Shader("selection");
-        this.terrainShader = new Shader("terrain");
-        this.terrainShadowShader = new Shader("terrain_fog");
-        this.entityShader = new Shader("entity");
+        NativeImage terrainImage = startup.join("terrain.png", terrainImageFuture);
+        NativeImage charImage = startup.join("char.png", charImageFuture);
+        startup.time("upload textures", () -> {
+            this.terrainTexture.upload(terrainImage);
+            this.charTexture.upload(charImage);
+        });
+        if (terrainImage != null) terrainImage.close();
+        if (charImage != null) charImage.close();
+
+        this.selectionShader = startup.time("compile selection shader", () -> new Shader(startup.join("selection shader", selectionSources)));
+        this.terrainShaders = startup.join("terrain shader", terrainVariants);
+        startup.time("compile terrain shader", () -> this.terrainShaders.get());
+        this.zombieShader = startup.time("compile zombie shader", () -> new Shader(startup.join("zombie shader", zombieSources)));
+        this.zombieModel = startup.join("zombie model", zombieModelFuture);
+        this.zombieRenderer = startup.time("create zombie renderer", () -> new ZombieRenderer(this.zombieModel));
 
         this.blockSelectionVertexBuffer = this.createBlockSelectionVertexBuffer();
 
-        this.world = new World(256, 256, 64);
-        this.worldRenderer = new WorldRenderer(this.world);
+        this.world = startup.join("world", worldFuture);
+        startupWorkers.shutdown();
+        this.worldRenderer = startup.time("create world renderer", () -> new WorldRenderer(this.world));
         this.world.setStateListener(this.worldRenderer);
 
         this.player = new PlayerEntity(this.world);
-        for (int i = 0; i < 100; ++i) {
-            ZombieEntity zombie = new ZombieEntity(this.world);
-            zombie.setPosition(128f, zombie.position.y, 128f);
-            this.zombies.add(zombie);
+        this.zombies = new ZombieStore(this.world);
+        int zombieCount = Integer.getInteger("whatDoesMcMean.zombies", 100);
+        for (int i = 0; i < zombieCount; ++i) {
+            int zombie = this.zombies.add(this.world.nextEntitySeed());
+            this.zombies.setPosition(zombie, 128f, this.zombies.getY(zombie), 128f);
         }
 
+        this.simulation = new Simulation(this.world, this.player, this.zombies, Runtime.getRuntime().availableProcessors());
+        this.simulation.setAutosaveInterval(Integer.getInteger("whatDoesMcMean.autosave", 0));
+        this.simulation.start();
+
         this.window.grabMouse();
 
+        startup.log();
+        LOGGER.info("Program binary cache: {} hits, {} misses", ProgramBinaryCache.getInstance().getHits(), ProgramBinaryCache.getInstance().getMisses());
+        String startupTrace = System.getProperty("whatDoesMcMean.startupTrace");
+        if (startupTrace != null) {
+            startup.writeTrace(Path.of(startupTrace));
+        }
+
         long lastTime = TimeUtils.millisTime();
         int frameCounter = 0;
 
         try {
             GL11.glClearColor(0.5f, 0.8f, 1f, 1f);
 
-            int tickCounter = 0;
-            long prevTimeMillis = TimeUtils.millisTime();
-            int ticksPerSecond = 60;
-            float tickDelta = 0;
-
             while (!this.window.shouldClose()) {
-                long now = TimeUtils.millisTime();
-                float lastFrameDuration = (float)(now - prevTimeMillis) / (1000f / ticksPerSecond);
-                prevTimeMillis = now;
-                tickDelta += lastFrameDuration;
-                int i = (int) tickDelta;
-                tickDelta -= (float) i;
-
-                for (; i > 0; --i) {
-                    ++tickCounter;
-                    this.update();
-                }
+                this.profiler.startFrame();
+                this.simulation.checkFailure();
+                this.simulation.setInput(this.sampleInput());
 
-                this.render(tickDelta);
+                SimulationSnapshot snapshot = this.simulation.acquireSnapshot();
+                this.profiler.push("render");
+                this.render(snapshot, snapshot.getTickDelta(TimeUtils.nanoTime()));
+                this.profiler.pop();
+
+                this.profiler.push("capture");
+                this.frameCapture.update(this.framebuffer.getColorAttachmentTxr(), this.framebuffer.getWidth(), this.framebuffer.getHeight());
+                this.profiler.pop();
 
                 if (this.rendeInfoOverlay) {
+                    this.profiler.push("imgui");
                     ImGuiLayer imGuiLayer = this.window.getImGuiLayer();
                     imGuiLayer.startFrame();
                     ImGui.setNextWindowPos(6, 6);
                     ImGui.setNextWindowBgAlpha(0.35f);
                     if (ImGui.begin("Info", ImGuiWindowFlags.NoDecoration | ImGuiWindowFlags.AlwaysAutoResize | ImGuiWindowFlags.NoSavedSettings | ImGuiWindowFlags.NoFocusOnAppearing | ImGuiWindowFlags.NoNav)) {
-                        ImGui.text(this.fps + " FPS " + this.tps + " TPS");
-                        ImGui.text("E: " + entityRenderCount + "/" + this.zombies.size() + "C: " + WorldRenderer.chunksRendererPerFrame + "/" + this.worldRenderer.getChunkCount() + " x=" + String.format("%.3f", this.player.position.x) + ",y=" + String.format("%.4f", this.player.position.y) + ",z=" + String.format("%.3f", this.player.position.z));
+                        ImGui.text(this.fps + " FPS " + this.simulation.getTicksPerSecond() + " TPS (" + this.simulation.getDroppedTicks() + " dropped)");
+                        ImGui.text("E: " + entityRenderCount + "/" + snapshot.zombies.size() + "C: " + WorldRenderer.chunksRendererPerFrame + "/" + this.worldRenderer.getChunkCount() + " (" + WorldRenderer.chunksCulledPerFrame + " occluded) B: " + this.worldRenderer.getPendingBuildCount() + " L: " + snapshot.getPendingLightUpdates() + " x=" + String.format("%.3f", snapshot.getPlayerX(1.0f)) + ",y=" + String.format("%.4f", snapshot.getPlayerY(1.0f)) + ",z=" + String.format("%.3f", snapshot.getPlayerZ(1.0f)));
+                        long vertexCount = this.worldRenderer.getVertexCount();
+                        long perBlockVertexCount = this.worldRenderer.getPerBlockVertexCount();
+                        ImGui.text("Mesh: " + (this.worldRenderer.isGreedyMeshing() ? "greedy " : "per-block ") + vertexCount + "/" + perBlockVertexCount + " vertices (-" + (perBlockVertexCount == 0 ? 0 : 100 - vertexCount * 100 / perBlockVertexCount) + "%)");
+                        ArenaAllocator arena = this.worldRenderer.getArenaAllocator();
+                        ImGui.text("Arena: " + arena.getUsed() + "/" + arena.getCapacity() + " vertices, " + arena.getFreeBlockCount() + " free blocks (" + Math.round(arena.getFragmentation() * 100.0f) + "% fragmented)");
+                        QuadIndexBuffer quadIndexBuffer = QuadIndexBuffer.getInstance();
+                        ImGui.text("Quad IBO: " + quadIndexBuffer.getSize() / 1024 + " KiB (" + quadIndexBuffer.getIndexSize() * 8 + "-bit, " + quadIndexBuffer.getUploadedBytes() / 1024 + " KiB uploaded in " + String.format("%.2f", quadIndexBuffer.getUploadNanos() / 1_000_000.0d) + " ms)");
+                        StreamingVertexBuffer ring = Tessellator.getInstance().getRing();
+                        ImGui.text("Stream: " + ring.getCapacity() / 1024 + " KiB ring, " + ring.getStallCount() + " stalls (" + ring.getStallNanos() / 1_000_000L + " ms)");
+                        if (this.frameCapture.isCapturing() || this.frameCapture.getSavedCount() > 0L) {
+                            ImGui.text("Capture: " + (this.frameCapture.isCapturing() ? "every " + this.frameCapture.getCaptureInterval() + " frames, " : "") + this.frameCapture.getSavedCount() + " saved, " + this.frameCapture.getDroppedCount() + " dropped, " + String.format("%.1f", this.frameCapture.getAverageEncodeMillis()) + " ms per image");
+                        }
+                        WorldJournal journal = this.world.getJournal();
+                        if (journal != null) {
+                            ImGui.text("Journal: " + journal.getSize() / 1024 + "/" + WorldJournal.COMPACT_SIZE / 1024 + " KiB, " + journal.getRecordCount() + " edits in " + journal.getCommitCount() + " commits");
+                        }
+                        WorldSave save = this.world.getLastSave();
+                        if (save != null) {
+                            ImGui.text("Save: " + (save.isDone() ? "last took " : "running " + Math.round(save.getProgress() * 100.0f) + "%, ") + save.getElapsedMillis() + " ms (" + save.getRewrittenCount() + " sections)");
+                        }
                     }
                     ImGui.end();
+                    this.renderProfilerOverlay();
                     imGuiLayer.endFrame();
+                    this.profiler.pop();
                 }
 
+                this.profiler.push("swap");
                 this.window.update();
+                this.profiler.pop();
+                this.profiler.endFrame();
                 ++frameCounter;
 
                 while (TimeUtils.millisTime() - lastTime > 1000L) {
                     lastTime += 1000L;
                     this.fps = frameCounter;
-                    this.tps = tickCounter;
                     frameCounter = 0;
-                    tickCounter = 0;
                 }
 
                 entityRenderCount = 0;
                 WorldRenderer.chunksRendererPerFrame = 0;
+                WorldRenderer.chunksCulledPerFrame = 0;
             }
         } catch (Exception e) {
             LOGGER.throwing(e);
         } finally {
+            // Stopped before saving so the world is not changing while it is written
+            this.simulation.close();
             this.world.save();
+            this.world.close();
 
             LOGGER.info("Closing");
             this.selectionShader.close();
-            this.terrainShader.close();
-            this.terrainShadowShader.close();
-            this.entityShader.close();
+            this.terrainShaders.close();
+            this.zombieShader.close();
+            this.zombieRenderer.close();
+            this.frameCapture.close();
+            this.gpuTimerQueries.close();
+            this.profiler.close();
             this.worldRenderer.close();
             this.terrainTexture.close();
             this.charTexture.close();
@@ -204,6 +310,7 @@ public class Game implements Runnable, Window.EventHandler {
             this.framebuffer.close();
             this.window.getImGuiLayer().close();
             Tessellator.cleanup();
+            QuadIndexBuffer.cleanup();
 
             GL30.glBindVertexArray(0);
             GL30.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
@@ -213,22 +320,31 @@ public class Game implements Runnable, Window.EventHandler {
         }
     }
 
-    private void update() {
-        this.blockHitResult = this.player.raytrace(8);
-
-        this.player.tick();
+    private PlayerInput sampleInput() {
+        return new PlayerInput(
+                Keybinding.FOWARDS.isPressed(this.window),
+                Keybinding.BACKWARD.isPressed(this.window),
+                Keybinding.STRAFE_LEFT.isPressed(this.window),
+                Keybinding.STRAFE_RIGHT.isPressed(this.window),
+                Keybinding.JUMP.isPressed(this.window),
+                Keybinding.DESCEND.isPressed(this.window),
+                this.cameraYaw,
+                this.cameraPitch
+        );
+    }
 
-        Iterator<ZombieEntity> iter = this.zombies.iterator();
-        while (iter.hasNext()) {
-            ZombieEntity zombie = iter.next();
-            zombie.tick();
-            if (zombie.position.y < -64) {
-                iter.remove();
-            }
+    private BlockHitResult raytrace(double x, double y, double z, double reach) {
+        Vector3d look = Entity.getLook(this.cameraYaw, this.cameraPitch);
+        Lock lock = this.world.getLock().readLock();
+        lock.lock();
+        try {
+            return this.world.raytraceBlock(x, y, z, x + look.x * reach, y + look.y * reach, z + look.z * reach);
+        } finally {
+            lock.unlock();
         }
     }
 
-    private void render(float tickDelta) {
+    private void render(SimulationSnapshot snapshot, float tickDelta) {
         this.framebuffer.resize(this.window.getWidth(), this.window.getHeight());
 
         this.framebuffer.bind();
@@ -242,45 +358,55 @@ public class Game implements Runnable, Window.EventHandler {
         GL11.glViewport(0, 0, this.window.getWidth(), this.window.getHeight());
         this.projection.setPerspective((float) Math.toRadians(70.0f), this.window.getWidth() / (float) this.window.getHeight(), 0.01f, 1000.0f);
 
-        float cameraPosX = org.joml.Math.lerp(this.player.prevPosition.x, this.player.position.x, tickDelta);
-        float cameraPosY = org.joml.Math.lerp(this.player.prevPosition.y, this.player.position.y, tickDelta);
-        float cameraPosZ = org.joml.Math.lerp(this.player.prevPosition.z, this.player.position.z, tickDelta);
+        float cameraPosX = snapshot.getPlayerX(tickDelta);
+        float cameraPosY = snapshot.getPlayerY(tickDelta);
+        float cameraPosZ = snapshot.getPlayerZ(tickDelta);
+        float eyeHeight = snapshot.getPlayerEyeHeight();
+        this.blockHitResult = this.raytrace(cameraPosX, cameraPosY + eyeHeight, cameraPosZ, 8);
 
         this.modelView.identity();
-        this.modelView.rotate((float) Math.toRadians(this.player.pitch), 1, 0, 0);
-        this.modelView.rotate((float) Math.toRadians(this.player.yaw), 0, 1, 0);
-        this.modelView.translate(-cameraPosX, -(cameraPosY + this.player.eyeHeight), -cameraPosZ);
+        this.modelView.rotate((float) Math.toRadians(this.cameraPitch), 1, 0, 0);
+        this.modelView.rotate((float) Math.toRadians(this.cameraYaw), 0, 1, 0);
+        this.modelView.translate(-cameraPosX, -(cameraPosY + eyeHeight), -cameraPosZ);
 
         this.frustum.set(this.projection, this.modelView);
 
         GL11.glEnable(GL11.GL_DEPTH_TEST);
         GL11.glEnable(GL11.GL_CULL_FACE);
 
+        this.profiler.push("terrain");
         this.terrainTexture.bind(0);
 
-        this.terrainShader.bind();
-        this.terrainShader.setUniform("uProjection", this.projection);
-        this.terrainShader.setUniform("uModelView", this.modelView);
-        this.terrainShader.setUniform("uColor", 1f, 1f, 1f, 1f);
-        this.terrainShader.setUniform("uSampler0", 0);
-
-        this.worldRenderer.render(this.terrainShader, this.frustum, 0);
-
-        this.terrainShadowShader.bind();
-        this.terrainShadowShader.setUniform("uProjection", this.projection);
-        this.terrainShadowShader.setUniform("uModelView", this.modelView);
-        this.terrainShadowShader.setUniform("uColor", 1f, 1f, 1f, 1f);
-        this.terrainShadowShader.setUniform("uFogDensity", 0.04f);
-        this.terrainShadowShader.setUniform("uFogColor", 0.0f, 0.0f, 0.0f, 1f);
-        this.terrainShadowShader.setUniform("uSampler0", 0);
-
-        this.worldRenderer.render(this.terrainShadowShader, this.frustum,  1);
+        Shader terrainShader = this.terrainShaders.get();
+        terrainShader.bind();
+        terrainShader.setUniform("uProjection", this.projection);
+        terrainShader.setUniform("uModelView", this.modelView);
+        terrainShader.setUniform("uColor", 1f, 1f, 1f, 1f);
+        terrainShader.setUniform("uSampler0", 0);
+
+        this.worldRenderer.update(this.frustum, cameraPosX, cameraPosY + eyeHeight, cameraPosZ);
+        this.worldRenderer.setupTerrain(this.frustum, cameraPosX, cameraPosY + eyeHeight, cameraPosZ);
+        this.worldRenderer.render(0);
+
+        // The fog variant is compiled on first use
+        Shader terrainFogShader = this.terrainShaders.get("FOG");
+        terrainFogShader.bind();
+        terrainFogShader.setUniform("uProjection", this.projection);
+        terrainFogShader.setUniform("uModelView", this.modelView);
+        terrainFogShader.setUniform("uColor", 1f, 1f, 1f, 1f);
+        terrainFogShader.setUniform("uFogDensity", 0.04f);
+        terrainFogShader.setUniform("uFogColor", 0.0f, 0.0f, 0.0f, 1f);
+        terrainFogShader.setUniform("uSampler0", 0);
+
+        this.worldRenderer.render(1);
+        this.profiler.pop();
 
         if (this.blockHitResult != null) {
+            this.profiler.push("selection");
             this.modelView.identity();
-            this.modelView.rotate((float) Math.toRadians(this.player.pitch), 1, 0, 0);
-            this.modelView.rotate((float) Math.toRadians(this.player.yaw), 0, 1, 0);
-            this.modelView.translate(-cameraPosX, -(cameraPosY + this.player.eyeHeight), -cameraPosZ);
+            this.modelView.rotate((float) Math.toRadians(this.cameraPitch), 1, 0, 0);
+            this.modelView.rotate((float) Math.toRadians(this.cameraYaw), 0, 1, 0);
+            this.modelView.translate(-cameraPosX, -(cameraPosY + eyeHeight), -cameraPosZ);
 
             this.selectionShader.bind();
             this.selectionShader.setUniform("uProjection", this.projection);
@@ -291,46 +417,47 @@ public class Game implements Runnable, Window.EventHandler {
             GL11.glEnable(GL11.GL_BLEND);
             GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE);
             this.blockSelectionVertexBuffer.bind();
-            this.blockSelectionVertexBuffer.draw(6, (6 * this.blockHitResult.face().index) * 4);
+            this.blockSelectionVertexBuffer.draw(6, 6 * this.blockHitResult.face().index);
             GL11.glDisable(GL11.GL_BLEND);
+            this.profiler.pop();
         }
 
         this.modelView.identity();
-        this.modelView.rotate((float) Math.toRadians(this.player.pitch), 1, 0, 0);
-        this.modelView.rotate((float) Math.toRadians(this.player.yaw), 0, 1, 0);
-        this.modelView.translate(-cameraPosX, -(cameraPosY + this.player.eyeHeight), -cameraPosZ);
-
-        this.entityShader.bind();
-        this.entityShader.setUniform("uProjection", this.projection);
-        this.entityShader.setUniform("uModelView", this.modelView);
-        this.entityShader.setUniform("uColor", 1f, 1f, 1f, 1f);
+        this.modelView.rotate((float) Math.toRadians(this.cameraPitch), 1, 0, 0);
+        this.modelView.rotate((float) Math.toRadians(this.cameraYaw), 0, 1, 0);
+        this.modelView.translate(-cameraPosX, -(cameraPosY + eyeHeight), -cameraPosZ);
+
+        this.profiler.push("zombies");
         this.charTexture.bind(0);
-        this.entityShader.setUniform("uSampler0", 0);
+        this.zombieShader.bind();
+        this.zombieShader.setUniform("uProjection", this.projection);
+        this.zombieShader.setUniform("uModelView", this.modelView);
+        this.zombieShader.setUniform("uColor", 1f, 1f, 1f, 1f);
+        this.zombieShader.setUniform("uSampler0", 0);
+        entityRenderCount += this.zombieRenderer.prepare(snapshot.zombies, this.frustum, tickDelta);
+        this.zombieRenderer.draw();
+        this.profiler.pop();
 
         Tessellator tessellator = Tessellator.getInstance();
-        tessellator.begin(DrawMode.QUADS, VertexLayout.POS_UV_COLOR);
         BufferBuilder builder = tessellator.getBufferBuilder();
 
-        for (ZombieEntity zombie : this.zombies) {
-            if (!this.frustum.isVisible(zombie.box)) continue;
-            this.zombieModel.render(builder, zombie, tickDelta);
-            entityRenderCount++;
-        }
-
-        tessellator.draw();
-
         if (this.renderEntityHitboxes) {
+            this.profiler.push("hitboxes");
             this.selectionShader.bind();
             this.selectionShader.setUniform("uProjection", this.projection);
             this.selectionShader.setUniform("uModelView", this.modelView);
             this.selectionShader.setUniform("uColor", 1f, 1f, 1f, 1f);
 
             tessellator.begin(DrawMode.LINES, VertexLayout.POS);
-            for (ZombieEntity zombie : this.zombies) {
-                if (!this.frustum.isVisible(zombie.box)) continue;
-                this.renderBox(builder, zombie.box);
-            }
+            ZombieSnapshot zombies = snapshot.zombies;
+            zombies.forEachVisible(this.frustum::isVisible, tickDelta, (i) -> {
+                float x = zombies.getLerpedX(i, tickDelta);
+                float y = zombies.getLerpedY(i, tickDelta);
+                float z = zombies.getLerpedZ(i, tickDelta);
+                this.renderBox(builder, x - ZombieStore.WIDTH / 2, y, z - ZombieStore.WIDTH / 2, x + ZombieStore.WIDTH / 2, y + ZombieStore.HEIGHT, z + ZombieStore.WIDTH / 2);
+            });
             tessellator.draw();
+            this.profiler.pop();
         }
 
         GL30.glDisable(GL30.GL_CULL_FACE);
@@ -343,6 +470,53 @@ public class Game implements Runnable, Window.EventHandler {
         this.framebuffer.draw();
     }
 
+    // One collapsible tree per profiled thread, cpu and gpu times as average/max over the profiler's window
+    private void renderProfilerOverlay() {
+        ImGui.setNextWindowPos(6, 140);
+        ImGui.setNextWindowBgAlpha(0.35f);
+        if (ImGui.begin("Profiler", ImGuiWindowFlags.AlwaysAutoResize | ImGuiWindowFlags.NoSavedSettings | ImGuiWindowFlags.NoFocusOnAppearing | ImGuiWindowFlags.NoNav)) {
+            ImGui.text("ms avg/max over " + Profiler.WINDOW + " frames, F6 dumps to profiler/");
+            for (Profiler profiler : Profiler.getProfilers()) {
+                List<Profiler.SectionStats> stats = profiler.getStats();
+                int openDepth = 0;
+                for (int i = 0; i < stats.size(); ++i) {
+                    Profiler.SectionStats section = stats.get(i);
+                    while (openDepth > section.depth()) {
+                        ImGui.treePop();
+                        --openDepth;
+                    }
+                    if (openDepth < section.depth()) continue;
+
+                    boolean leaf = i + 1 == stats.size() || stats.get(i + 1).depth() <= section.depth();
+                    String label = String.format("%s  cpu %.2f/%.2f", section.name(), section.avgMillis(), section.maxMillis());
+                    if (section.hasGpuTime()) {
+                        label += String.format("  gpu %.2f/%.2f", section.avgGpuMillis(), section.maxGpuMillis());
+                    }
+                    if (ImGui.treeNodeEx(profiler.getName() + i, ImGuiTreeNodeFlags.DefaultOpen | (leaf ? ImGuiTreeNodeFlags.Leaf : 0), label)) {
+                        ++openDepth;
+                    }
+                }
+                while (openDepth > 0) {
+                    ImGui.treePop();
+                    --openDepth;
+                }
+            }
+        }
+        ImGui.end();
+    }
+
+    private void dumpProfiler() {
+        Path profilerPath = Path.of("profiler");
+        if (!IOUtils.ensureDirectory(profilerPath)) return;
+        Path path = profilerPath.resolve(SCREENSHOT_DATE_FORMATTER.format(LocalDateTime.now()) + ".txt");
+        try {
+            Profiler.dumpAll(path);
+            LOGGER.info("Dumped profiler to {}", path);
+        } catch (IOException e) {
+            LOGGER.error("Failed to dump profiler to {}", path, e);
+        }
+    }
+
     private void renderBox(BufferBuilder builder,Box box) {
         this.renderBox(builder, box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
     }
@@ -373,27 +547,33 @@ public class Game implements Runnable, Window.EventHandler {
 
         float dx = (float) this.mouse[2];
         float dy = (float) this.mouse[3];
-        this.player.turn(dx * MOUSE_SENSITIVITY, dy * MOUSE_SENSITIVITY);
+        this.cameraYaw = MathUtils.wrapDegrees(this.cameraYaw + dx * MOUSE_SENSITIVITY, -180, 180);
+        this.cameraPitch = Math.clamp(this.cameraPitch + dy * MOUSE_SENSITIVITY, -90, 90);
         this.mouse[2] = 0;
         this.mouse[3] = 0;
     }
 
     @Override
     public void onMouseButton(int button, int action) {
-        if (action != GLFW.GLFW_RELEASE && this.blockHitResult != null) {
+        BlockHitResult hit = this.blockHitResult;
+        if (action != GLFW.GLFW_RELEASE && hit != null) {
             if (button == 1) {
-                this.world.setBlockId(this.blockHitResult.x(), this.blockHitResult.y(), this.blockHitResult.z(), 0);
+                this.setBlock(hit.x(), hit.y(), hit.z(), 0);
             } else if (button == 0) {
-                int x = this.blockHitResult.x() + this.blockHitResult.face().normalX;
-                int y = this.blockHitResult.y() + this.blockHitResult.face().normalY;
-                int z = this.blockHitResult.z() + this.blockHitResult.face().normalZ;
-                if (!this.player.box.intersects(x, y, z, x + 1, y + 1, z + 1)) {
-                    this.world.setBlockId(x, y, z, 1);
-                }
+                this.setBlock(hit.x() + hit.face().normalX, hit.y() + hit.face().normalY, hit.z() + hit.face().normalZ, 1);
             }
         }
     }
 
+    // Applied on the simulation thread, where the player's box is current
+    private void setBlock(int x, int y, int z, int blockId) {
+        this.simulation.submit(() -> {
+            if (blockId != 0 && this.player.box.intersects(x, y, z, x + 1, y + 1, z + 1)) return;
+            this.world.setBlockId(x, y, z, blockId);
+            this.worldRenderer.prioritizeBlock(x, y, z);
+        });
+    }
+
     @Override
     public void onKey(int key, int action) {
         if (action == GLFW.GLFW_PRESS) {
@@ -404,25 +584,25 @@ public class Game implements Runnable, Window.EventHandler {
             } else if (Keybinding.TOGGLE_FULLSCREEN.test(key)) {
                 this.window.toggleFullscreen();
             } else if (Keybinding.SAVE_WORLD_TO_DISK.test(key)) {
-                this.world.save();
+                this.simulation.submit(this.world::saveAsync);
             } else if (Keybinding.GO_TO_RANDOM_POS.test(key)) {
-                this.player.goToRandomPosition();
+                this.simulation.submit(this.player::goToRandomPosition);
             } else if (Keybinding.FLY.test(key)) {
-                this.player.canFly = !this.player.canFly;
+                this.simulation.submit(() -> this.player.canFly = !this.player.canFly);
             } else if (Keybinding.NO_CLIP.test(key)) {
-                this.player.noClip = !this.player.noClip;
+                this.simulation.submit(() -> this.player.noClip = !this.player.noClip);
+            } else if (Keybinding.TOGGLE_GREEDY_MESHING.test(key)) {
+                this.worldRenderer.setGreedyMeshing(!this.worldRenderer.isGreedyMeshing());
+            } else if (Keybinding.DUMP_PROFILER.test(key)) {
+                this.dumpProfiler();
             } else if (key == GLFW.GLFW_KEY_F8) {
                 this.renderEntityHitboxes = !this.renderEntityHitboxes;
             } else if (key == GLFW.GLFW_KEY_F3) {
                 this.rendeInfoOverlay = !this.rendeInfoOverlay;
             } else if (key == GLFW.GLFW_KEY_F2) {
-                NativeImage image = NativeImage.readFromTexture(this.framebuffer.getColorAttachmentTxr(), this.framebuffer.getWidth(), this.framebuffer.getHeight(), PixelFormat.RGB);
-                image.flip(Mirroring.VERTICAL);
-                Path screenshotsPath = Path.of("screenshots");
-                if (IOUtils.ensureDirectory(screenshotsPath)) {
-                    image.saveTo(screenshotsPath.resolve(SCREENSHOT_DATE_FORMATTER.format(LocalDateTime.now()) + ".png"));
-                }
-                image.close();
+                this.frameCapture.requestScreenshot();
+            } else if (Keybinding.TOGGLE_CAPTURE.test(key)) {
+                this.frameCapture.toggleCapture();
             }
         }
     }
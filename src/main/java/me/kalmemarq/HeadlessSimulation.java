@@ -0,0 +1,171 @@
+package me.kalmemarq;
+
+import me.kalmemarq.entity.PlayerEntity;
+import me.kalmemarq.entity.PlayerInput;
+import me.kalmemarq.entity.ZombieStore;
+import me.kalmemarq.util.IOUtils;
+import me.kalmemarq.util.Profiler;
+import me.kalmemarq.util.TimeUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Runs the simulation without a window for throughput measurements, for example:
+// --headless --zombies 10000 --seconds 30 --tps 0
+// A tps of 0 ticks as fast as possible. The world is generated in a temporary directory that is deleted afterwards,
+// unless --world names a region file to run on instead.
+public class HeadlessSimulation {
+    private static final Logger LOGGER = LogManager.getLogger("Headless");
+
+    private int zombieCount = Integer.getInteger("whatDoesMcMean.zombies", 100);
+    private int ticksPerSecond = 0;
+    private long seconds = 10L;
+    private long ticks = 0L;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path worldPath;
+
+    public static boolean isRequested(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--headless")) return true;
+        }
+        return false;
+    }
+
+    public static HeadlessSimulation fromArgs(String[] args) {
+        HeadlessSimulation headless = new HeadlessSimulation();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--headless" -> {}
+                case "--zombies" -> headless.zombieCount = Integer.parseInt(getValue(args, ++i));
+                case "--tps" -> headless.ticksPerSecond = Integer.parseInt(getValue(args, ++i));
+                case "--seconds" -> headless.seconds = Long.parseLong(getValue(args, ++i));
+                case "--ticks" -> headless.ticks = Long.parseLong(getValue(args, ++i));
+                case "--threads" -> headless.threads = Integer.parseInt(getValue(args, ++i));
+                case "--world" -> headless.worldPath = Path.of(getValue(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        return headless;
+    }
+
+    private static String getValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    public void run() {
+        Path directory = null;
+        Path worldPath = this.worldPath;
+        if (worldPath == null) {
+            try {
+                directory = Files.createTempDirectory("headless");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            worldPath = directory.resolve("level.region");
+        }
+
+        World world = new World(worldPath, 256, 256, 64);
+        try {
+            this.run(world);
+        } finally {
+            world.close();
+            if (directory != null) {
+                IOUtils.deleteDirectory(directory);
+            }
+        }
+    }
+
+    private void run(World world) {
+        PlayerEntity player = new PlayerEntity(world);
+        ZombieStore zombies = new ZombieStore(world);
+        for (int i = 0; i < this.zombieCount; ++i) {
+            int zombie = zombies.add(world.nextEntitySeed());
+            zombies.setPosition(zombie, 128f, zombies.getY(zombie), 128f);
+        }
+
+        LOGGER.info("Simulating {} zombies on {} threads at {} for {}", this.zombieCount, this.threads,
+                this.ticksPerSecond > 0 ? this.ticksPerSecond + " TPS" : "full speed", this.ticks > 0 ? this.ticks + " ticks" : this.seconds + " s");
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long startAllocated = getAllocatedBytes(threadBean);
+        long startGcCount = getGcCount();
+        long startGcMillis = getGcMillis();
+
+        Simulation simulation = new Simulation(world, player, zombies, this.threads, this.ticksPerSecond);
+        // Walks into whatever is ahead so the player's collisions are part of the tick
+        simulation.setInput(new PlayerInput(true, false, false, false, true, false, 45f, 0f));
+        long start = TimeUtils.nanoTime();
+        long deadline = start + this.seconds * 1_000_000_000L;
+        simulation.start();
+        long elapsed;
+        long allocated;
+        try {
+            while (this.ticks > 0 ? simulation.getTickCount() < this.ticks : TimeUtils.nanoTime() < deadline) {
+                simulation.checkFailure();
+                Thread.sleep(1L);
+            }
+            elapsed = TimeUtils.nanoTime() - start;
+            // Taken while the simulation thread is still alive, a finished thread's count is gone
+            allocated = startAllocated < 0L ? -1L : getAllocatedBytes(threadBean) - startAllocated;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            simulation.close();
+        }
+
+        long tickCount = simulation.getTickCount();
+        double seconds = elapsed / 1.0e9d;
+        LOGGER.info("{} ticks in {} s: {} TPS, {} dropped", tickCount, String.format("%.2f", seconds), String.format("%.1f", tickCount / seconds), simulation.getDroppedTicks());
+        List<Profiler.SectionStats> stats = simulation.getProfiler().getStats();
+        long totalNanos = stats.getFirst().totalNanos();
+        for (Profiler.SectionStats section : stats) {
+            LOGGER.info("{}{}: {} ms/tick ({}%), max {} ms over the last {} ticks", "  ".repeat(section.depth()), section.name(),
+                    String.format("%.4f", tickCount == 0 ? 0.0d : section.totalNanos() / 1.0e6d / tickCount),
+                    totalNanos == 0 ? 0 : section.totalNanos() * 100L / totalNanos, String.format("%.3f", section.maxMillis()), Math.min(tickCount, Profiler.WINDOW));
+        }
+        if (allocated >= 0L) {
+            LOGGER.info("Allocated {} MiB ({} MiB/s, {} B/tick), {} GCs taking {} ms", allocated / (1024 * 1024), String.format("%.1f", allocated / seconds / (1024 * 1024)),
+                    tickCount == 0 ? 0 : allocated / tickCount, getGcCount() - startGcCount, getGcMillis() - startGcMillis);
+        }
+    }
+
+    // Summed over every live thread, which includes the simulation thread and the entity tick pool; -1 if unsupported
+    private static long getAllocatedBytes(ThreadMXBean threadBean) {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean sunThreadBean) || !sunThreadBean.isThreadAllocatedMemorySupported()) {
+            return -1L;
+        }
+        long total = 0L;
+        for (long allocated : sunThreadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            if (allocated > 0L) total += allocated;
+        }
+        return total;
+    }
+
+    private static long getGcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0L);
+        }
+        return count;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(bean.getCollectionTime(), 0L);
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,202 @@
+package me.kalmemarq;
+
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Binary skylight: a block is lit when no solid block lies anywhere above it in its column
+public class LightEngine {
+    public static final int UPDATES_PER_TICK = 32768;
+    private static final byte DARK = 0;
+    private static final byte LIT = 1;
+    private static final byte MIXED = 2;
+
+    private final World world;
+    private final byte[] states;
+    private final long[][] bits;
+    private final int[] litCounts;
+    private final LongArrayFIFOQueue pendingColumns = new LongArrayFIFOQueue();
+    private final BitSet changedSections;
+
+    public LightEngine(World world) {
+        this.world = world;
+        int sectionCount = world.xSections * world.ySections * world.zSections;
+        this.states = new byte[sectionCount];
+        this.bits = new long[sectionCount][];
+        this.litCounts = new int[sectionCount];
+        this.changedSections = new BitSet(sectionCount);
+    }
+
+    public void initialize() {
+        this.pendingColumns.clear();
+        int size = World.CHUNK_SIZE;
+        boolean[] blocked = new boolean[size * size];
+
+        for (int sx = 0; sx < this.world.xSections; ++sx) {
+            for (int sz = 0; sz < this.world.zSections; ++sz) {
+                Arrays.fill(blocked, false);
+                int blockedCount = 0;
+
+                for (int sy = this.world.ySections - 1; sy >= 0; --sy) {
+                    int index = this.world.getSectionIndex(sx, sy, sz);
+                    int uniformId = this.world.getUniformBlockId(index);
+                    this.bits[index] = null;
+
+                    if (blockedCount == size * size) {
+                        this.setUniform(index, DARK);
+                        continue;
+                    }
+
+                    if (blockedCount == 0 && uniformId == 0) {
+                        this.setUniform(index, LIT);
+                        continue;
+                    }
+
+                    this.setUniform(index, DARK);
+                    int minY = sy * size;
+                    int maxLocalY = Math.min(size, this.world.depth - minY) - 1;
+                    for (int ly = maxLocalY; ly >= 0; --ly) {
+                        for (int lz = 0; lz < size; ++lz) {
+                            for (int lx = 0; lx < size; ++lx) {
+                                int column = lz * size + lx;
+                                if (blocked[column]) continue;
+
+                                this.setBit(index, ChunkSection.getIndex(lx, ly, lz), true);
+                                int id = uniformId >= 0 ? uniformId : this.world.getBlockId(sx * size + lx, minY + ly, sz * size + lz);
+                                if (id != 0) {
+                                    blocked[column] = true;
+                                    ++blockedCount;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isLit(int x, int y, int z) {
+        int index = this.world.getSectionIndex(x >> World.CHUNK_SHIFT, y >> World.CHUNK_SHIFT, z >> World.CHUNK_SHIFT);
+        byte state = this.states[index];
+        if (state != MIXED) return state == LIT;
+        int bit = ChunkSection.getIndex(x & (World.CHUNK_SIZE - 1), y & (World.CHUNK_SIZE - 1), z & (World.CHUNK_SIZE - 1));
+        return (this.bits[index][bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    public void onBlockChanged(int x, int y, int z) {
+        if (y > 0) {
+            this.pendingColumns.enqueue(pack(x, y - 1, z));
+        }
+    }
+
+    public boolean hasPendingUpdates() {
+        return !this.pendingColumns.isEmpty();
+    }
+
+    public int getPendingColumnCount() {
+        return this.pendingColumns.size();
+    }
+
+    // Walks each edited column downwards until the stored light agrees with the block above it again
+    public int tick(int maxUpdates, World.WorldStateListener listener) {
+        int updates = 0;
+        while (!this.pendingColumns.isEmpty() && updates < maxUpdates) {
+            long column = this.pendingColumns.dequeueLong();
+            int x = (int) (column >>> 40) & 0xFFFFF;
+            int z = (int) (column >>> 20) & 0xFFFFF;
+            int y = (int) column & 0xFFFFF;
+
+            for (; y >= 0; --y) {
+                if (updates++ >= maxUpdates) {
+                    this.pendingColumns.enqueueFirst(pack(x, y, z));
+                    break;
+                }
+
+                boolean lit = y + 1 >= this.world.depth || (this.isLit(x, y + 1, z) && this.world.getBlockId(x, y + 1, z) == 0);
+                if (lit == this.isLit(x, y, z)) break;
+
+                int index = this.world.getSectionIndex(x >> World.CHUNK_SHIFT, y >> World.CHUNK_SHIFT, z >> World.CHUNK_SHIFT);
+                this.setBit(index, ChunkSection.getIndex(x & (World.CHUNK_SIZE - 1), y & (World.CHUNK_SIZE - 1), z & (World.CHUNK_SIZE - 1)), lit);
+                this.markChanged(x, y, z);
+            }
+        }
+
+        if (listener != null) {
+            for (int index = this.changedSections.nextSetBit(0); index >= 0; index = this.changedSections.nextSetBit(index + 1)) {
+                int sz = index % this.world.zSections;
+                int rest = index / this.world.zSections;
+                listener.onChunkModified(rest % this.world.xSections, rest / this.world.xSections, sz);
+            }
+        }
+        this.changedSections.clear();
+        return updates;
+    }
+
+    // A voxel's light is sampled by the faces of its six neighbours, so border voxels dirty the adjacent chunk too
+    private void markChanged(int x, int y, int z) {
+        this.markSection(x, y, z);
+        int localX = x & (World.CHUNK_SIZE - 1);
+        int localY = y & (World.CHUNK_SIZE - 1);
+        int localZ = z & (World.CHUNK_SIZE - 1);
+        if (localX == 0) this.markSection(x - 1, y, z);
+        else if (localX == World.CHUNK_SIZE - 1) this.markSection(x + 1, y, z);
+        if (localY == 0) this.markSection(x, y - 1, z);
+        else if (localY == World.CHUNK_SIZE - 1) this.markSection(x, y + 1, z);
+        if (localZ == 0) this.markSection(x, y, z - 1);
+        else if (localZ == World.CHUNK_SIZE - 1) this.markSection(x, y, z + 1);
+    }
+
+    private void markSection(int x, int y, int z) {
+        if (this.world.isOutOfBounds(x, y, z)) return;
+        this.changedSections.set(this.world.getSectionIndex(x >> World.CHUNK_SHIFT, y >> World.CHUNK_SHIFT, z >> World.CHUNK_SHIFT));
+    }
+
+    private void setUniform(int index, byte state) {
+        this.states[index] = state;
+        this.bits[index] = null;
+        this.litCounts[index] = state == LIT ? ChunkSection.VOLUME : 0;
+    }
+
+    private void setBit(int index, int bit, boolean lit) {
+        byte state = this.states[index];
+        if (state != MIXED) {
+            if ((state == LIT) == lit) return;
+            long[] data = new long[ChunkSection.VOLUME / 64];
+            if (state == LIT) Arrays.fill(data, -1L);
+            this.bits[index] = data;
+            this.states[index] = MIXED;
+        }
+
+        long[] data = this.bits[index];
+        long mask = 1L << bit;
+        boolean wasLit = (data[bit >>> 6] & mask) != 0;
+        if (wasLit == lit) return;
+
+        if (lit) {
+            data[bit >>> 6] |= mask;
+            ++this.litCounts[index];
+        } else {
+            data[bit >>> 6] &= ~mask;
+            --this.litCounts[index];
+        }
+
+        if (this.litCounts[index] == 0) {
+            this.setUniform(index, DARK);
+        } else if (this.litCounts[index] == ChunkSection.VOLUME) {
+            this.setUniform(index, LIT);
+        }
+    }
+
+    public long getMemoryUsage() {
+        long size = this.states.length + 4L * this.litCounts.length + 4L * this.bits.length;
+        for (long[] data : this.bits) {
+            if (data != null) size += 16 + 8L * data.length;
+        }
+        return size;
+    }
+
+    private static long pack(int x, int y, int z) {
+        return ((long) x << 40) | ((long) z << 20) | y;
+    }
+}
@@ -2,6 +2,10 @@ package me.kalmemarq;
 
 public class Main {
     public static void main(String[] args) {
-        new Game().run();
+        if (HeadlessSimulation.isRequested(args)) {
+            HeadlessSimulation.fromArgs(args).run();
+        } else {
+            new Game().run();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package me.kalmemarq;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Layout: header, one entry per section, then deflated section records.
+// An entry is (offset, length); a length of 0 marks a uniform section whose block id is stored in the offset.
+//
+// The header and entries are read into memory when the file is opened and records are read with positional reads, so
+// nothing maps the file and closing the channel is enough to let a save replace it.
+public class RegionFile implements Closeable {
+    public static final int MAGIC = 0x52443133;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+    public static final int ENTRY_SIZE = 12;
+
+    private final FileChannel channel;
+    private final ByteBuffer table;
+    public final int width;
+    public final int height;
+    public final int depth;
+    public final int sectionCount;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer inflateBuffer = createRawBuffer();
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(4096);
+
+    private RegionFile(FileChannel channel, ByteBuffer table, int sectionCount) {
+        this.channel = channel;
+        this.table = table;
+        this.width = table.getInt(8);
+        this.height = table.getInt(12);
+        this.depth = table.getInt(16);
+        this.sectionCount = sectionCount;
+    }
+
+    public static RegionFile open(Path path, int sectionCount) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a region file: " + path);
+            }
+            if (channel.size() < HEADER_SIZE + (long) ENTRY_SIZE * sectionCount) {
+                throw new IOException("Truncated region file: " + path);
+            }
+
+            ByteBuffer table = read(channel, 0L, ByteBuffer.allocate(HEADER_SIZE + ENTRY_SIZE * sectionCount).order(ByteOrder.LITTLE_ENDIAN));
+            if (table.getInt(0) != MAGIC) {
+                throw new IOException("Not a region file: " + path);
+            }
+
+            int version = table.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported region file version " + version);
+            }
+            return new RegionFile(channel, table, sectionCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Fills the buffer from the given position; positional reads leave the channel's position alone and are safe to
+    // run from several threads at once
+    private static ByteBuffer read(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of region file at " + position);
+            }
+            position += read;
+        }
+        return buffer.flip();
+    }
+
+    private int getEntryOffset(int index) {
+        return HEADER_SIZE + index * ENTRY_SIZE;
+    }
+
+    public int getUniformBlockId(int index) {
+        int entry = this.getEntryOffset(index);
+        return this.table.getInt(entry + 8) == 0 ? (int) this.table.getLong(entry) : -1;
+    }
+
+    public ChunkSection readSection(int index) {
+        int entry = this.getEntryOffset(index);
+        long offset = this.table.getLong(entry);
+        int length = this.table.getInt(entry + 8);
+        if (length == 0) {
+            return new ChunkSection((int) offset);
+        }
+
+        if (this.recordBuffer.capacity() < length) {
+            this.recordBuffer = ByteBuffer.allocate(Math.max(length, this.recordBuffer.capacity() * 2));
+        }
+        this.recordBuffer.clear().limit(length);
+        try {
+            read(this.channel, offset, this.recordBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read section " + index, e);
+        }
+
+        this.inflater.reset();
+        this.inflater.setInput(this.recordBuffer);
+        this.inflateBuffer.clear();
+        try {
+            while (!this.inflater.finished()) {
+                if (this.inflater.inflate(this.inflateBuffer) == 0 && this.inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated record for section " + index);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt record for section " + index, e);
+        }
+        this.inflateBuffer.flip();
+        return ChunkSection.read(this.inflateBuffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    public static Path getTempPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    public static ByteBuffer createRawBuffer() {
+        return ByteBuffer.allocate(2 + 256 + ChunkSection.VOLUME).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Independent per section, so callers can compress on several threads with one deflater and raw buffer each
+    public static byte[] deflate(ChunkSection section, Deflater deflater, ByteBuffer raw) {
+        raw.clear();
+        section.write(raw);
+        raw.flip();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteBuffer compressed = ByteBuffer.allocate(raw.remaining() + 64);
+        while (!deflater.finished()) {
+            if (!compressed.hasRemaining()) {
+                compressed = ByteBuffer.allocate(compressed.capacity() * 2).put(compressed.flip());
+            }
+            deflater.deflate(compressed);
+        }
+        byte[] record = new byte[compressed.position()];
+        compressed.flip().get(record);
+        return record;
+    }
+
+    // Non-uniform sections need their deflated record, sections left null are copied from the source file without
+    // being decoded. Writes the temporary path; replace moves it over the old file once that is closed.
+    public static void write(Path path, int width, int height, int depth, ChunkSection[] sections, byte[][] records, RegionFile source) throws IOException {
+        ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + ENTRY_SIZE * sections.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel channel = FileChannel.open(getTempPath(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            table.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(depth);
+            long position = table.capacity();
+            ByteBuffer copyBuffer = null;
+
+            for (int i = 0; i < sections.length; ++i) {
+                ChunkSection section = sections[i];
+                ByteBuffer record;
+                if (section == null) {
+                    int entry = source.getEntryOffset(i);
+                    long offset = source.table.getLong(entry);
+                    int length = source.table.getInt(entry + 8);
+                    if (length == 0) {
+                        table.putLong(offset).putInt(0);
+                        continue;
+                    }
+                    if (copyBuffer == null || copyBuffer.capacity() < length) {
+                        copyBuffer = ByteBuffer.allocate(Math.max(length, 4096));
+                    }
+                    record = read(source.channel, offset, copyBuffer.clear().limit(length));
+                } else if (section.isUniform()) {
+                    table.putLong(section.get(0)).putInt(0);
+                    continue;
+                } else {
+                    record = ByteBuffer.wrap(records[i]);
+                }
+
+                table.putLong(position).putInt(record.remaining());
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+            }
+
+            table.flip();
+            while (table.hasRemaining()) {
+                channel.write(table, table.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    // Moves a finished write over the old file in a single step and opens it. Whatever had the old file open has to
+    // close it first, Windows refuses to replace a file that is still open.
+    public static RegionFile replace(Path path, int sectionCount) throws IOException {
+        Files.move(getTempPath(path), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path, sectionCount);
+    }
+}
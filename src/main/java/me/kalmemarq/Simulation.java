@@ -0,0 +1,244 @@
+package me.kalmemarq;
+
+import me.kalmemarq.entity.EntityGrid;
+import me.kalmemarq.entity.EntityTicker;
+import me.kalmemarq.entity.PlayerEntity;
+import me.kalmemarq.entity.PlayerInput;
+import me.kalmemarq.entity.ZombieStore;
+import me.kalmemarq.util.Profiler;
+import me.kalmemarq.util.TimeUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the world, the player and the zombies on their own thread at a fixed rate. The render thread never touches
+// that state directly: it sends input and edits in, and draws from the snapshot published after every tick.
+public class Simulation implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("Simulation");
+    public static final int TICKS_PER_SECOND = 60;
+    // After a stall at most this many ticks run back to back, the rest of the backlog is dropped instead of letting
+    // the loop fall further behind trying to catch up
+    public static final int MAX_CATCH_UP_TICKS = 10;
+
+    private final World world;
+    private final PlayerEntity player;
+    private final ZombieStore zombies;
+    private final EntityTicker entityTicker;
+    // 0 runs ticks back to back as fast as they complete
+    private final long tickNanos;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Three snapshots: one being written here, one being drawn by the render thread and the latest complete one in
+    // between, so neither side ever waits for the other or sees a snapshot change under it
+    private final AtomicReference<SimulationSnapshot> published;
+    private SimulationSnapshot writing;
+    private SimulationSnapshot reading;
+    private long sequence;
+    private volatile PlayerInput input = PlayerInput.NONE;
+    private volatile boolean running;
+    private volatile Throwable failure;
+    private volatile int ticksPerSecond;
+    private volatile long droppedTicks;
+    private volatile long tickCount;
+    // 0 disables autosaving
+    private volatile long autosaveTicks;
+    private final Profiler profiler = new Profiler("Simulation");
+
+    public Simulation(World world, PlayerEntity player, ZombieStore zombies, int parallelism) {
+        this(world, player, zombies, parallelism, TICKS_PER_SECOND);
+    }
+
+    public Simulation(World world, PlayerEntity player, ZombieStore zombies, int parallelism, int ticksPerSecond) {
+        this.world = world;
+        this.player = player;
+        this.zombies = zombies;
+        this.entityTicker = new EntityTicker(parallelism);
+        this.tickNanos = ticksPerSecond > 0 ? 1_000_000_000L / ticksPerSecond : 0L;
+        this.thread = new Thread(this::run, "Simulation");
+        this.thread.setDaemon(true);
+
+        EntityGrid grid = zombies.getGrid();
+        this.writing = new SimulationSnapshot(grid);
+        this.reading = new SimulationSnapshot(grid);
+        SimulationSnapshot initial = new SimulationSnapshot(grid);
+        initial.copyFrom(player, zombies);
+        initial.tickTime = TimeUtils.nanoTime();
+        initial.tickNanos = this.tickNanos;
+        initial.sequence = ++this.sequence;
+        this.published = new AtomicReference<>(initial);
+    }
+
+    public void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    private void run() {
+        this.profiler.bindToCurrentThread();
+        long nextTick = TimeUtils.nanoTime();
+        long secondStart = nextTick;
+        int tickCounter = 0;
+
+        try {
+            while (this.running) {
+                long now = TimeUtils.nanoTime();
+                if (now < nextTick) {
+                    LockSupport.parkNanos(nextTick - now);
+                    continue;
+                }
+
+                int ticks = 0;
+                do {
+                    this.tick(nextTick);
+                    nextTick += this.tickNanos;
+                    ++ticks;
+                    ++tickCounter;
+                } while (this.tickNanos > 0L && ticks < MAX_CATCH_UP_TICKS && TimeUtils.nanoTime() >= nextTick);
+
+                now = TimeUtils.nanoTime();
+                if (this.tickNanos == 0L) {
+                    nextTick = now;
+                } else if (now - nextTick >= this.tickNanos) {
+                    long behind = (now - nextTick) / this.tickNanos;
+                    this.droppedTicks += behind;
+                    nextTick += behind * this.tickNanos;
+                }
+
+                while (now - secondStart >= 1_000_000_000L) {
+                    secondStart += 1_000_000_000L;
+                    this.ticksPerSecond = tickCounter;
+                    tickCounter = 0;
+                }
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Simulation thread crashed", e);
+            this.failure = e;
+        }
+    }
+
+    private void tick(long tickTime) {
+        Profiler profiler = this.profiler;
+        profiler.startFrame();
+        profiler.push("world");
+        Lock lock = this.world.getLock().writeLock();
+        lock.lock();
+        try {
+            this.runTasks();
+            this.world.tick();
+            long autosaveTicks = this.autosaveTicks;
+            if (autosaveTicks > 0L && this.tickCount > 0L && this.tickCount % autosaveTicks == 0L) {
+                this.world.saveAsync();
+            }
+        } finally {
+            lock.unlock();
+        }
+        profiler.pop();
+
+        profiler.push("player");
+        this.player.input = this.input;
+        this.player.tick();
+        profiler.pop();
+
+        profiler.push("entities");
+        this.entityTicker.tick(this.zombies.size(), this.zombies::tick);
+        profiler.pop();
+
+        profiler.push("cleanup");
+        this.zombies.removeFallen();
+        this.zombies.updateGrid();
+        profiler.pop();
+
+        profiler.push("snapshot");
+        this.writing.copyFrom(this.player, this.zombies);
+        this.writing.pendingLightUpdates = this.world.getPendingLightUpdates();
+        this.writing.tickTime = tickTime;
+        this.writing.tickNanos = this.tickNanos;
+        this.writing.sequence = ++this.sequence;
+        this.writing = this.published.getAndSet(this.writing);
+        profiler.pop();
+        profiler.endFrame();
+        ++this.tickCount;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    // Runs the task on the simulation thread before the next tick, holding the world's write lock
+    public void submit(Runnable task) {
+        this.tasks.add(task);
+    }
+
+    public void setInput(PlayerInput input) {
+        this.input = input;
+    }
+
+    // Only for the render thread, the returned snapshot stays unchanged until the next call
+    public SimulationSnapshot acquireSnapshot() {
+        if (this.published.get().sequence > this.reading.sequence) {
+            this.reading = this.published.getAndSet(this.reading);
+        }
+        return this.reading;
+    }
+
+    public void checkFailure() {
+        if (this.failure != null) {
+            throw new RuntimeException("Simulation thread crashed", this.failure);
+        }
+    }
+
+    public int getTicksPerSecond() {
+        return this.ticksPerSecond;
+    }
+
+    public long getDroppedTicks() {
+        return this.droppedTicks;
+    }
+
+    // Starts a background save every this many seconds of ticks, 0 turns it off
+    public void setAutosaveInterval(int seconds) {
+        this.autosaveTicks = (long) seconds * TICKS_PER_SECOND;
+    }
+
+    public long getTickCount() {
+        return this.tickCount;
+    }
+
+    public Profiler getProfiler() {
+        return this.profiler;
+    }
+
+    public int getParallelism() {
+        return this.entityTicker.getParallelism();
+    }
+
+    // Stops the thread and runs whatever was still submitted, so edits made right before closing are not lost
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Lock lock = this.world.getLock().writeLock();
+        lock.lock();
+        try {
+            this.runTasks();
+        } finally {
+            lock.unlock();
+        }
+        this.entityTicker.close();
+        this.profiler.close();
+    }
+}
@@ -0,0 +1,64 @@
+package me.kalmemarq;
+
+import me.kalmemarq.entity.EntityGrid;
+import me.kalmemarq.entity.PlayerEntity;
+import me.kalmemarq.entity.ZombieSnapshot;
+import me.kalmemarq.entity.ZombieStore;
+
+// Everything the render thread draws from the simulation, as of the end of one tick. The previous and current
+// positions are both kept so frames between two ticks can interpolate with tickDelta.
+public class SimulationSnapshot {
+    public final ZombieSnapshot zombies;
+    volatile long sequence;
+    long tickTime;
+    long tickNanos;
+    int pendingLightUpdates;
+    float playerPrevX;
+    float playerPrevY;
+    float playerPrevZ;
+    float playerX;
+    float playerY;
+    float playerZ;
+    float playerEyeHeight;
+
+    SimulationSnapshot(EntityGrid grid) {
+        this.zombies = new ZombieSnapshot(grid);
+    }
+
+    void copyFrom(PlayerEntity player, ZombieStore zombies) {
+        this.playerPrevX = player.prevPosition.x;
+        this.playerPrevY = player.prevPosition.y;
+        this.playerPrevZ = player.prevPosition.z;
+        this.playerX = player.position.x;
+        this.playerY = player.position.y;
+        this.playerZ = player.position.z;
+        this.playerEyeHeight = player.eyeHeight;
+        this.zombies.copyFrom(zombies);
+    }
+
+    // How far the frame at the given time is between the previous and the current tick, clamped to it
+    public float getTickDelta(long nanoTime) {
+        if (this.tickNanos == 0L) return 1.0f;
+        return Math.clamp((float) (nanoTime - this.tickTime) / this.tickNanos, 0.0f, 1.0f);
+    }
+
+    public float getPlayerX(float tickDelta) {
+        return org.joml.Math.lerp(this.playerPrevX, this.playerX, tickDelta);
+    }
+
+    public float getPlayerY(float tickDelta) {
+        return org.joml.Math.lerp(this.playerPrevY, this.playerY, tickDelta);
+    }
+
+    public float getPlayerZ(float tickDelta) {
+        return org.joml.Math.lerp(this.playerPrevZ, this.playerZ, tickDelta);
+    }
+
+    public float getPlayerEyeHeight() {
+        return this.playerEyeHeight;
+    }
+
+    public int getPendingLightUpdates() {
+        return this.pendingLightUpdates;
+    }
+}
@@ -2,93 +2,383 @@ package me.kalmemarq;
 
 import me.kalmemarq.util.BlockHitResult;
 import me.kalmemarq.util.Box;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.joml.Vector3d;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
-public class World {
-    public static final int CHUNK_SIZE = 32;
+public class World implements BlockView {
+    private static final Logger LOGGER = LogManager.getLogger("World");
+    public static final int CHUNK_SHIFT = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final VarHandle SECTIONS = MethodHandles.arrayElementVarHandle(ChunkSection[].class);
     public final int width;
     public final int height;
     public final int depth;
-    private final byte[] blocks;
-    private final short[] heightmap;
+    public final int xSections;
+    public final int ySections;
+    public final int zSections;
+    private final ChunkSection[] sections;
+    private final LightEngine lightEngine;
+    private final Path savePath;
+    private final BitSet dirtySections;
+    private final SplittableRandom entitySeeds = new SplittableRandom(0x5EEDL);
+    // Held for writing by the simulation thread while it edits blocks or spreads light, and for reading by the render
+    // thread while it snapshots chunks for meshing or raytraces the selection
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private RegionFile region;
+    private WorldJournal journal;
+    private long tickCount;
+    private volatile WorldSave pendingSave;
+    private volatile WorldSave lastSave;
     private WorldStateListener stateListener;
 
     public World(int width, int height, int depth) {
+        this(Path.of("level.region"), width, height, depth);
+    }
+
+    public World(Path savePath, int width, int height, int depth) {
+        this.savePath = savePath;
         this.width = width;
         this.height = height;
         this.depth = depth;
-        this.blocks = new byte[width * height * depth];
-        this.heightmap = new short[width * height];
+        this.xSections = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.ySections = (depth + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.zSections = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.sections = new ChunkSection[this.xSections * this.ySections * this.zSections];
+        this.dirtySections = new BitSet(this.sections.length);
+        this.lightEngine = new LightEngine(this);
 
         if (!this.load()) {
-            for (int x = 0; x < width; ++x) {
-                for (int y = 0; y < depth; ++y) {
-                    for (int z = 0; z < height; ++z) {
-                        int i = (y * height + z) * width + x;
-                        int id = (y <= this.depth * 2 / 3 ? 1 : 0);
-                        this.blocks[i] = (byte) id;
+            this.generate();
+        }
+        this.openJournal();
+
+        long start = System.nanoTime();
+        this.lightEngine.initialize();
+        LOGGER.info("Initialized skylight in {} ms ({} KiB)", (System.nanoTime() - start) / 1_000_000L, this.lightEngine.getMemoryUsage() / 1024L);
+        LOGGER.info("Block storage uses {} KiB for {} of {} sections ({} uniform), {} KiB as a flat array", this.getBlockStorageSize() / 1024L, this.getLoadedSectionCount(), this.sections.length, this.getUniformSectionCount(), (long) this.width * this.height * this.depth / 1024L);
+    }
+
+    private void generate() {
+        int topLayer = this.depth * 2 / 3;
+        for (int sx = 0; sx < this.xSections; ++sx) {
+            for (int sy = 0; sy < this.ySections; ++sy) {
+                for (int sz = 0; sz < this.zSections; ++sz) {
+                    int minY = sy * CHUNK_SIZE;
+                    int maxY = minY + CHUNK_SIZE - 1;
+                    ChunkSection section;
+                    if (maxY <= topLayer) {
+                        section = new ChunkSection(1);
+                    } else if (minY > topLayer) {
+                        section = new ChunkSection(0);
+                    } else {
+                        section = new ChunkSection(0);
+                        for (int y = 0; y <= topLayer - minY; ++y) {
+                            for (int z = 0; z < CHUNK_SIZE; ++z) {
+                                for (int x = 0; x < CHUNK_SIZE; ++x) {
+                                    section.set(ChunkSection.getIndex(x, y, z), 1);
+                                }
+                            }
+                        }
                     }
+                    this.sections[this.getSectionIndex(sx, sy, sz)] = section;
                 }
             }
         }
+        this.region = null;
+        this.dirtySections.set(0, this.sections.length);
+    }
 
-        this.calculateHeightMap();
+    // Edits journaled since the last save go back over the loaded or regenerated world before anything reads it
+    private void openJournal() {
+        WorldJournal journal = new WorldJournal(this.savePath, this.width, this.height, this.depth);
+        try {
+            journal.replay((x, y, z, id) -> {
+                if (this.isOutOfBounds(x, y, z)) return;
+                int index = ChunkSection.getIndex(x & (CHUNK_SIZE - 1), y & (CHUNK_SIZE - 1), z & (CHUNK_SIZE - 1));
+                ChunkSection section = this.getSection(x, y, z);
+                if (section.get(index) != (byte) id) {
+                    section.set(index, id);
+                    this.dirtySections.set(this.getSectionIndex(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT, z >> CHUNK_SHIFT));
+                }
+            });
+            this.journal = journal;
+        } catch (Exception e) {
+            LOGGER.error("Failed to replay journal for {}, edits are only kept until the next save", this.savePath, e);
+        }
     }
 
     public boolean load() {
-        try (DataInputStream e = new DataInputStream(new GZIPInputStream(Files.newInputStream(Path.of("level.dat"))))) {
-            e.readFully(this.blocks);
+        if (Files.exists(this.savePath)) {
+            long start = System.nanoTime();
+            try {
+                RegionFile region = RegionFile.open(this.savePath, this.sections.length);
+                if (region.width != this.width || region.height != this.height || region.depth != this.depth) {
+                    LOGGER.warn("Ignoring {}: saved size {}x{}x{} does not match {}x{}x{}", this.savePath, region.width, region.height, region.depth, this.width, this.height, this.depth);
+                    region.close();
+                    return false;
+                }
+                this.region = region;
+            } catch (Exception e) {
+                LOGGER.error("Failed to open {}", this.savePath, e);
+                return false;
+            }
+            LOGGER.info("Opened {} in {} ms", this.savePath, (System.nanoTime() - start) / 1_000_000L);
+            return true;
+        }
+
+        Path legacyPath = this.savePath.resolveSibling("level.dat");
+        if (Files.exists(legacyPath) && this.loadLegacy(legacyPath)) {
+            LOGGER.info("Converting legacy {} to {}", legacyPath, this.savePath);
+            this.region = null;
+            this.dirtySections.set(0, this.sections.length);
+            if (this.save()) {
+                try {
+                    Files.move(legacyPath, legacyPath.resolveSibling("level.dat.bak"), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to rename {}", legacyPath, e);
+                }
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean loadLegacy(Path path) {
+        for (int i = 0; i < this.sections.length; ++i) {
+            this.sections[i] = new ChunkSection(0);
+        }
+
+        // Legacy level.dat is a flat (y * height + z) * width + x array
+        long start = System.nanoTime();
+        try (DataInputStream e = new DataInputStream(new GZIPInputStream(Files.newInputStream(path)))) {
+            byte[] row = new byte[this.width];
+            for (int y = 0; y < this.depth; ++y) {
+                for (int z = 0; z < this.height; ++z) {
+                    e.readFully(row);
+                    for (int x = 0; x < this.width; ++x) {
+                        this.getSection(x, y, z).set(ChunkSection.getIndex(x & (CHUNK_SIZE - 1), y & (CHUNK_SIZE - 1), z & (CHUNK_SIZE - 1)), row[x]);
+                    }
+                }
+            }
         } catch (Exception ignored) {
             return false;
         }
 
+        LOGGER.info("Loaded legacy {} in {} ms", path, (System.nanoTime() - start) / 1_000_000L);
         return true;
     }
 
-    public void save() {
-        try (DataOutputStream e = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(Path.of("level.dat"))))) {
-            e.write(this.blocks);
-        } catch (Exception ignored) {
+    // Snapshots the dirty sections and writes them in the background, the world keeps changing meanwhile. Has to be
+    // called with write access to the world; returns the save already running if there is one.
+    public WorldSave saveAsync() {
+        if (this.pendingSave == null) {
+            this.pendingSave = this.startSave(true);
         }
+        return this.pendingSave;
     }
 
-    public boolean isTopLayer(int y) {
-        return y == this.depth * 2 / 3;
+    // Writes everything changed so far before returning, after waiting for a save that is still running
+    public boolean save() {
+        if (this.pendingSave != null) {
+            this.finishSave(this.pendingSave);
+        }
+        return this.finishSave(this.startSave(false));
     }
 
-    public void setStateListener(WorldStateListener stateListener) {
-        this.stateListener = stateListener;
+    private WorldSave startSave(boolean background) {
+        WorldSave save = new WorldSave(this.savePath, this.width, this.height, this.depth, this.sections, this.dirtySections, this.region);
+        // Edits from here on belong to the next save; if this one fails its sections are marked dirty again
+        this.dirtySections.clear();
+        if (this.journal != null) {
+            this.journal.rotate();
+        }
+        save.start(background);
+        this.lastSave = save;
+        return save;
     }
 
-    public void calculateHeightMap() {
-        this.calculateHeightMap(0, 0, this.width, this.height);
+    // Called from tick, so the region is only replaced while nothing else reads the world
+    private void pollSave() {
+        if (this.pendingSave != null && this.pendingSave.isDone()) {
+            this.finishSave(this.pendingSave);
+        }
     }
 
-    public void calculateHeightMap(int minX, int minZ, int maxX, int maxZ) {
-        for (int x = minX; x < maxX; ++x) {
-            for (int z = minZ; z < maxZ; ++z) {
-                int y = this.depth - 1;
-                for (; y >= 0; --y) {
-                    if (this.getBlockId(x, y, z) != 0) {
-                        break;
+    private boolean finishSave(WorldSave save) {
+        if (save == this.pendingSave) {
+            this.pendingSave = null;
+        }
+
+        try {
+            save.join();
+            this.replaceRegion();
+        } catch (RuntimeException | IOException e) {
+            this.dirtySections.or(save.getRewritten());
+            LOGGER.error("Failed to save {}", this.savePath, e);
+            return false;
+        }
+
+        save.log(this.sections.length);
+        if (this.journal != null) {
+            this.journal.discardPrevious();
+        }
+        return true;
+    }
+
+    // The old region is closed before the new file is moved over it. If the move fails the old file is still there
+    // and is opened again, sections not decoded yet are read from it as before.
+    private void replaceRegion() throws IOException {
+        synchronized (this.sections) {
+            if (this.region != null) {
+                this.region.close();
+            }
+            try {
+                this.region = RegionFile.replace(this.savePath, this.sections.length);
+            } catch (IOException e) {
+                if (this.region != null) {
+                    try {
+                        this.region = RegionFile.open(this.savePath, this.sections.length);
+                    } catch (IOException reopenException) {
+                        e.addSuppressed(reopenException);
+                        throw new IllegalStateException("Failed to reopen " + this.savePath + " after a failed save", e);
                     }
                 }
-                this.heightmap[z * this.width + x] = (short) y;
+                throw e;
+            }
+        }
+    }
+
+    // The running save, or null
+    public WorldSave getPendingSave() {
+        return this.pendingSave;
+    }
+
+    public WorldSave getLastSave() {
+        return this.lastSave;
+    }
+
+    // Null when the journal could not be read
+    public WorldJournal getJournal() {
+        return this.journal;
+    }
+
+    // Flushes the journal and closes the region file, called once the world is no longer used
+    public void close() {
+        if (this.journal != null) {
+            this.journal.close();
+        }
+        if (this.region != null) {
+            try {
+                this.region.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close {}", this.savePath, e);
+            }
+        }
+    }
+
+    public long getBlockStorageSize() {
+        long size = 16L + 4L * this.sections.length;
+        for (ChunkSection section : this.sections) {
+            if (section != null) size += section.getMemoryUsage();
+        }
+        return size;
+    }
+
+    public int getUniformSectionCount() {
+        int count = 0;
+        for (ChunkSection section : this.sections) {
+            if (section != null && section.isUniform()) ++count;
+        }
+        return count;
+    }
+
+    public int getLoadedSectionCount() {
+        int count = 0;
+        for (ChunkSection section : this.sections) {
+            if (section != null) ++count;
+        }
+        return count;
+    }
+
+    // Entities created in the same order get the same random streams, whichever thread later ticks them
+    public long nextEntitySeed() {
+        return this.entitySeeds.nextLong();
+    }
+
+    public int getSectionIndex(int sectionX, int sectionY, int sectionZ) {
+        return (sectionX + sectionY * this.xSections) * this.zSections + sectionZ;
+    }
+
+    // Returns -1 for sections holding more than one block id, without decoding sections that are still on disk
+    public int getUniformBlockId(int index) {
+        ChunkSection section = this.sections[index];
+        if (section != null) return section.isUniform() ? section.get(0) : -1;
+        return this.region.getUniformBlockId(index);
+    }
+
+    // Entity ticks read blocks from several threads, so decoding is serialized and the result published with release
+    // semantics. The region's inflater is not thread safe either.
+    private ChunkSection getSection(int x, int y, int z) {
+        int index = this.getSectionIndex(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT, z >> CHUNK_SHIFT);
+        ChunkSection section = (ChunkSection) SECTIONS.getAcquire(this.sections, index);
+        if (section == null) {
+            synchronized (this.sections) {
+                section = this.sections[index];
+                if (section == null) {
+                    section = this.region.readSection(index);
+                    SECTIONS.setRelease(this.sections, index, section);
+                }
             }
         }
+        return section;
+    }
+
+    @Override
+    public boolean isTopLayer(int y) {
+        return y == this.depth * 2 / 3;
+    }
+
+    public ReadWriteLock getLock() {
+        return this.lock;
+    }
+
+    public void setStateListener(WorldStateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    public void tick() {
+        ++this.tickCount;
+        this.pollSave();
+        if (this.journal != null && this.pendingSave == null && this.journal.getSize() >= WorldJournal.COMPACT_SIZE) {
+            // Folds the journal into the region file, the snapshot moves it aside and the finished save deletes it
+            this.saveAsync();
+        }
+        this.lightEngine.tick(LightEngine.UPDATES_PER_TICK, this.stateListener);
+    }
+
+    public int getPendingLightUpdates() {
+        return this.lightEngine.getPendingColumnCount();
     }
 
     private void notifyChangesOfBlock(int x, int y, int z) {
-        this.calculateHeightMap(x, z, x + 1, z + 1);
+        this.lightEngine.onBlockChanged(x, y, z);
         if (this.stateListener != null) {
             int chunkX = x / CHUNK_SIZE;
             int chunkY = y / CHUNK_SIZE;
@@ -121,17 +411,32 @@ public class World {
 
     public void setBlockId(int x, int y, int z, int id) {
         if (this.isOutOfBounds(x, y, z)) return;
-        this.blocks[(y * this.height + z) * this.width + x] = (byte) id;
+        int index = this.getSectionIndex(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT, z >> CHUNK_SHIFT);
+        this.dirtySections.set(index);
+        ChunkSection section = this.getSection(x, y, z);
+        if (section.isShared()) {
+            // A save is still reading this one, write to a copy instead
+            section = section.copy();
+            SECTIONS.setRelease(this.sections, index, section);
+        }
+        int localIndex = ChunkSection.getIndex(x & (CHUNK_SIZE - 1), y & (CHUNK_SIZE - 1), z & (CHUNK_SIZE - 1));
+        int oldId = section.get(localIndex);
+        if (this.journal != null && oldId != (byte) id) {
+            this.journal.append(x, y, z, oldId, id, this.tickCount);
+        }
+        section.set(localIndex, id);
         this.notifyChangesOfBlock(x, y, z);
     }
 
+    @Override
     public int getBlockId(int x, int y, int z) {
         if (this.isOutOfBounds(x, y, z)) return 0;
-        return this.blocks[(y * this.height + z) * this.width + x];
+        return this.getSection(x, y, z).get(ChunkSection.getIndex(x & (CHUNK_SIZE - 1), y & (CHUNK_SIZE - 1), z & (CHUNK_SIZE - 1)));
     }
 
+    @Override
     public float getBrigthness(int x, int y, int z) {
-        if (this.isOutOfBounds(x, y, z) || this.heightmap[z * this.width + x] <= y) return 1f;
+        if (this.isOutOfBounds(x, y, z) || this.lightEngine.isLit(x, y, z)) return 1f;
         return 0.5f;
     }
 
@@ -157,6 +462,44 @@ public class World {
         return boxes;
     }
 
+    public float clipXCollide(Box area, Box box, float xd) {
+        return this.clipCollide(area, box, 0, xd);
+    }
+
+    public float clipYCollide(Box area, Box box, float yd) {
+        return this.clipCollide(area, box, 1, yd);
+    }
+
+    public float clipZCollide(Box area, Box box, float zd) {
+        return this.clipCollide(area, box, 2, zd);
+    }
+
+    // Clips the delta against every solid block getCubes would return for area, without allocating any boxes
+    private float clipCollide(Box area, Box box, int axis, float delta) {
+        int x0 = (int) Math.clamp(area.minX, 0, this.width);
+        int x1 = (int) Math.clamp(area.maxX + 1.0f, 0, this.width);
+        int y0 = (int) Math.clamp(area.minY, 0, this.depth);
+        int y1 = (int) Math.clamp(area.maxY + 1.0f, 0, this.depth);
+        int z0 = (int) Math.clamp(area.minZ, 0, this.height);
+        int z1 = (int) Math.clamp(area.maxZ + 1.0f, 0, this.height);
+
+        for (int y = y0; y < y1; ++y) {
+            for (int z = z0; z < z1; ++z) {
+                for (int x = x0; x < x1; ++x) {
+                    if (this.getBlockId(x, y, z) == 0) continue;
+
+                    delta = switch (axis) {
+                        case 0 -> Box.clipXCollide(x, y, z, x + 1, y + 1, z + 1, box, delta);
+                        case 1 -> Box.clipYCollide(x, y, z, x + 1, y + 1, z + 1, box, delta);
+                        default -> Box.clipZCollide(x, y, z, x + 1, y + 1, z + 1, box, delta);
+                    };
+                }
+            }
+        }
+
+        return delta;
+    }
+
     public BlockHitResult raytraceBlock(double x0, double y0, double z0, double x1, double y1, double z1) {
         int endX = (int) Math.floor(x1);
         int endY = (int) Math.floor(y1);
@@ -0,0 +1,329 @@
+package me.kalmemarq;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Append-only log of block edits since the region file was last written, so an edit is on disk a few milliseconds
+// after it happens instead of at the next save. Edits are buffered by the world thread and committed in batches by
+// the journal thread, one write and one force per batch.
+//
+// Layout: header (magic, version, width, height, depth), then batches of (length, crc32, records). A record is
+// (x, y, z, old id, new id, tick) and stores the new id outright, so replaying a record twice changes nothing. A batch
+// cut short by a crash fails its checksum and is dropped along with everything after it.
+//
+// A save moves the journal aside to the previous segment when it takes its snapshot and deletes that segment once the
+// region file has been replaced; until then both segments are replayed, oldest first.
+public class WorldJournal {
+    private static final Logger LOGGER = LogManager.getLogger("World");
+    public static final int MAGIC = 0x52444A31;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+    public static final int BATCH_HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 22;
+    // Once the journal holds this much the world rewrites its region file and starts a new one
+    public static final long COMPACT_SIZE = 4L << 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // How long the first edit of a batch waits for others to join it
+    private static final long COMMIT_MILLIS = 20L;
+
+    private final Path path;
+    private final Path previousPath;
+    private final int width;
+    private final int height;
+    private final int depth;
+    // Guards the buffers, appends only ever wait on this
+    private final Object bufferLock = new Object();
+    // Guards the channel, held while a batch is written so batches land in the order they were taken
+    private final Object channelLock = new Object();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer committing = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer batchHeader = ByteBuffer.allocate(BATCH_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    private Thread thread;
+    private boolean running;
+    private boolean failed;
+    private volatile long size;
+    private volatile long recordCount;
+    private volatile long commitCount;
+    private volatile long commitNanos;
+
+    public WorldJournal(Path regionPath, int width, int height, int depth) {
+        this.path = regionPath.resolveSibling(regionPath.getFileName() + ".journal");
+        this.previousPath = regionPath.resolveSibling(regionPath.getFileName() + ".journal.prev");
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+    }
+
+    public interface EditConsumer {
+        void accept(int x, int y, int z, int id);
+    }
+
+    // Applies both segments over the world just loaded and returns the number of records read. The current segment is
+    // cut back to its last intact batch so appending continues after it.
+    public long replay(EditConsumer consumer) throws IOException {
+        long start = System.nanoTime();
+        long records = this.replay(this.previousPath, consumer, false) + this.replay(this.path, consumer, true);
+        if (records > 0L) {
+            LOGGER.info("Replayed {} journaled edits in {} ms", records, (System.nanoTime() - start) / 1_000_000L);
+        }
+        return records;
+    }
+
+    private long replay(Path path, EditConsumer consumer, boolean current) throws IOException {
+        if (!Files.exists(path)) return 0L;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            LOGGER.warn("Ignoring {}: not a journal", path);
+            return 0L;
+        }
+        if (buffer.getInt(8) != this.width || buffer.getInt(12) != this.height || buffer.getInt(16) != this.depth) {
+            LOGGER.warn("Ignoring {}: journaled size {}x{}x{} does not match {}x{}x{}", path, buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), this.width, this.height, this.depth);
+            return 0L;
+        }
+
+        long records = 0L;
+        int position = HEADER_SIZE;
+        while (position + BATCH_HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            int recordsStart = position + BATCH_HEADER_SIZE;
+            if (length <= 0 || length % RECORD_SIZE != 0 || recordsStart + length > buffer.limit()) break;
+            this.crc.reset();
+            this.crc.update(buffer.slice(recordsStart, length));
+            if ((int) this.crc.getValue() != checksum) break;
+
+            for (int record = recordsStart; record < recordsStart + length; record += RECORD_SIZE) {
+                consumer.accept(buffer.getInt(record), buffer.getInt(record + 4), buffer.getInt(record + 8), buffer.get(record + 13));
+            }
+            records += length / RECORD_SIZE;
+            position = recordsStart + length;
+        }
+
+        if (position < buffer.limit()) {
+            LOGGER.warn("Dropped {} bytes of torn or corrupt journal at the end of {}", buffer.limit() - position, path);
+            if (current) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(position);
+                }
+            }
+        }
+        if (current) {
+            this.size = position;
+        }
+        return records;
+    }
+
+    // Called by the thread editing the world, only waits when the journal thread has fallen a whole buffer behind
+    public void append(int x, int y, int z, int oldId, int newId, long tick) {
+        synchronized (this.bufferLock) {
+            if (this.failed) return;
+            if (this.thread == null) {
+                this.running = true;
+                this.thread = new Thread(this::run, "World Journal");
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+
+            while (this.pending.remaining() < RECORD_SIZE) {
+                this.bufferLock.notifyAll();
+                try {
+                    this.bufferLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            boolean first = this.pending.position() == 0;
+            this.pending.putInt(x).putInt(y).putInt(z).put((byte) oldId).put((byte) newId).putLong(tick);
+            ++this.recordCount;
+            if (first) {
+                this.bufferLock.notifyAll();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this.bufferLock) {
+                try {
+                    while (this.running && this.pending.position() == 0) {
+                        this.bufferLock.wait();
+                    }
+                    if (!this.running) return;
+                    // Group commit: let the edits of the next few milliseconds share this batch's write and force
+                    long deadline = System.nanoTime() + COMMIT_MILLIS * 1_000_000L;
+                    long remaining;
+                    while (this.running && this.pending.remaining() >= RECORD_SIZE && (remaining = deadline - System.nanoTime()) > 0L) {
+                        this.bufferLock.wait(Math.max(remaining / 1_000_000L, 1L));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            this.commit(true);
+        }
+    }
+
+    // Writes out whatever is buffered as one batch
+    private void commit(boolean force) {
+        synchronized (this.channelLock) {
+            ByteBuffer batch;
+            synchronized (this.bufferLock) {
+                if (this.pending.position() == 0) return;
+                batch = this.pending;
+                this.pending = this.committing;
+                this.committing = batch;
+                this.bufferLock.notifyAll();
+            }
+
+            long start = System.nanoTime();
+            batch.flip();
+            try {
+                FileChannel channel = this.getChannel();
+                this.crc.reset();
+                this.crc.update(batch.duplicate());
+                this.batchHeader.clear();
+                this.batchHeader.putInt(batch.remaining()).putInt((int) this.crc.getValue()).flip();
+                long position = this.size;
+                int length = BATCH_HEADER_SIZE + batch.remaining();
+                while (this.batchHeader.hasRemaining()) {
+                    position += channel.write(this.batchHeader, position);
+                }
+                while (batch.hasRemaining()) {
+                    position += channel.write(batch, position);
+                }
+                if (force) {
+                    channel.force(false);
+                }
+                this.size += length;
+                ++this.commitCount;
+                this.commitNanos += System.nanoTime() - start;
+            } catch (IOException e) {
+                LOGGER.error("Failed to write journal {}, edits are only kept until the next save", this.path, e);
+                synchronized (this.bufferLock) {
+                    this.failed = true;
+                    this.pending.clear();
+                    this.bufferLock.notifyAll();
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Opened on the first commit, so a world that is never edited never creates a journal
+    private FileChannel getChannel() throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (this.size < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(this.width).putInt(this.height).putInt(this.depth).flip();
+                this.channel.truncate(0L);
+                while (header.hasRemaining()) {
+                    this.channel.write(header, header.position());
+                }
+                this.size = HEADER_SIZE;
+            }
+        }
+        return this.channel;
+    }
+
+    // Called when a save takes its snapshot: everything journaled so far is in that snapshot, so it moves to the
+    // previous segment and later edits start a new one. A previous segment still there from a failed save is kept
+    // and this one is added to its end. Not forced, a crash before the save lands loses at most the last batch.
+    public void rotate() {
+        synchronized (this.channelLock) {
+            this.commit(false);
+            try {
+                if (this.channel != null) {
+                    this.channel.close();
+                    this.channel = null;
+                }
+                if (Files.exists(this.path)) {
+                    if (Files.exists(this.previousPath)) {
+                        try (FileChannel source = FileChannel.open(this.path, StandardOpenOption.READ);
+                             FileChannel target = FileChannel.open(this.previousPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                            long position = HEADER_SIZE;
+                            while (position < source.size()) {
+                                position += source.transferTo(position, source.size() - position, target);
+                            }
+                        }
+                        Files.delete(this.path);
+                    } else {
+                        Files.move(this.path, this.previousPath, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Failed to rotate journal {}", this.path, e);
+            }
+            this.size = 0L;
+        }
+    }
+
+    // The save that took the last snapshot has replaced the region file
+    public void discardPrevious() {
+        try {
+            Files.deleteIfExists(this.previousPath);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete {}", this.previousPath, e);
+        }
+    }
+
+    public void close() {
+        Thread thread;
+        synchronized (this.bufferLock) {
+            thread = this.thread;
+            this.running = false;
+            this.bufferLock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this.channelLock) {
+            this.commit(true);
+            if (this.channel != null) {
+                try {
+                    this.channel.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close journal {}", this.path, e);
+                }
+                this.channel = null;
+            }
+        }
+    }
+
+    // Bytes in the current segment, counting edits not committed yet
+    public long getSize() {
+        return Math.max(this.size, HEADER_SIZE) + (long) this.pending.position();
+    }
+
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    public long getCommitCount() {
+        return this.commitCount;
+    }
+
+    public long getCommitNanos() {
+        return this.commitNanos;
+    }
+}
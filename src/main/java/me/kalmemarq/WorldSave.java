@@ -0,0 +1,173 @@
+package me.kalmemarq;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+// One save of a world: the sections to rewrite are captured when it is created and marked shared, so the world copies
+// them before its next write instead of waiting. The records are deflated in batches on the common pool and written
+// from the saver thread to a temporary file; the world moves it over the old one when it finishes the save.
+public class WorldSave {
+    private static final Logger LOGGER = LogManager.getLogger("World");
+    private static final int BATCH_SIZE = 8;
+    private static final ExecutorService SAVER = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "World Saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final ChunkSection[] sections;
+    private final BitSet rewritten;
+    private final RegionFile source;
+    private final int compressTotal;
+    private final AtomicInteger compressed = new AtomicInteger();
+    private final long startTime;
+    private final long snapshotNanos;
+    private volatile long compressNanos;
+    private volatile long writeNanos;
+    private volatile long finishTime;
+    private volatile CompletableFuture<Void> future;
+
+    // Has to run with write access to the world, it takes the snapshot
+    WorldSave(Path path, int width, int height, int depth, ChunkSection[] worldSections, BitSet dirty, RegionFile source) {
+        this.startTime = System.nanoTime();
+        this.path = path;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.source = source;
+        this.sections = new ChunkSection[worldSections.length];
+        this.rewritten = new BitSet(worldSections.length);
+
+        int compressTotal = 0;
+        for (int i = 0; i < worldSections.length; ++i) {
+            if (source == null || dirty.get(i)) {
+                ChunkSection section = worldSections[i];
+                section.share();
+                this.sections[i] = section;
+                this.rewritten.set(i);
+                if (!section.isUniform()) ++compressTotal;
+            }
+        }
+        this.compressTotal = compressTotal;
+        this.snapshotNanos = System.nanoTime() - this.startTime;
+    }
+
+    // In the background on the saver thread, or right here when the caller needs the file written before it goes on
+    void start(boolean background) {
+        if (background) {
+            this.future = CompletableFuture.supplyAsync(this::run, SAVER);
+            return;
+        }
+
+        try {
+            this.future = CompletableFuture.completedFuture(this.run());
+        } catch (RuntimeException e) {
+            this.future = CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Void run() {
+        long compressStart = System.nanoTime();
+        byte[][] records = new byte[this.sections.length][];
+        int batchCount = (this.sections.length + BATCH_SIZE - 1) / BATCH_SIZE;
+        CompletableFuture<?>[] batches = new CompletableFuture<?>[batchCount];
+        for (int batch = 0; batch < batchCount; ++batch) {
+            int from = batch * BATCH_SIZE;
+            int to = Math.min(from + BATCH_SIZE, this.sections.length);
+            batches[batch] = CompletableFuture.runAsync(() -> this.compress(records, from, to), ForkJoinPool.commonPool());
+        }
+        CompletableFuture.allOf(batches).join();
+        this.compressNanos = System.nanoTime() - compressStart;
+
+        long writeStart = System.nanoTime();
+        try {
+            RegionFile.write(this.path, this.width, this.height, this.depth, this.sections, records, this.source);
+            this.writeNanos = System.nanoTime() - writeStart;
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.finishTime = System.nanoTime();
+        }
+    }
+
+    private void compress(byte[][] records, int from, int to) {
+        Deflater deflater = null;
+        ByteBuffer raw = null;
+        try {
+            for (int i = from; i < to; ++i) {
+                ChunkSection section = this.sections[i];
+                if (section == null || section.isUniform()) continue;
+                if (deflater == null) {
+                    deflater = new Deflater();
+                    raw = RegionFile.createRawBuffer();
+                }
+                records[i] = RegionFile.deflate(section, deflater, raw);
+                this.compressed.incrementAndGet();
+            }
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    public boolean isDone() {
+        return this.future.isDone();
+    }
+
+    // Blocks until the temporary file is written, throws if writing failed
+    void join() {
+        this.future.join();
+    }
+
+    BitSet getRewritten() {
+        return this.rewritten;
+    }
+
+    public int getRewrittenCount() {
+        return this.rewritten.cardinality();
+    }
+
+    // Fraction of the sections deflated so far, the write itself is the last step after 1
+    public float getProgress() {
+        return this.compressTotal == 0 ? 1.0f : this.compressed.get() / (float) this.compressTotal;
+    }
+
+    public long getElapsedMillis() {
+        long end = this.finishTime;
+        return ((end != 0L ? end : System.nanoTime()) - this.startTime) / 1_000_000L;
+    }
+
+    public long getSnapshotNanos() {
+        return this.snapshotNanos;
+    }
+
+    public long getCompressNanos() {
+        return this.compressNanos;
+    }
+
+    public long getWriteNanos() {
+        return this.writeNanos;
+    }
+
+    void log(int sectionCount) {
+        LOGGER.info("Saved {} ({} of {} sections rewritten) in {} ms: snapshot {} us, compress {} ms on {} threads, write {} ms",
+                this.path, this.getRewrittenCount(), sectionCount, this.getElapsedMillis(), this.snapshotNanos / 1_000L,
+                this.compressNanos / 1_000_000L, ForkJoinPool.getCommonPoolParallelism(), this.writeNanos / 1_000_000L);
+    }
+}
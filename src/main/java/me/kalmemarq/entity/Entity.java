@@ -7,7 +7,7 @@ import org.joml.Vector2f;
 import org.joml.Vector3d;
 import org.joml.Vector3f;
 
-import java.util.List;
+import java.util.SplittableRandom;
 
 public class Entity {
     public final World world;
@@ -22,23 +22,39 @@ public class Entity {
     public boolean onGround;
     public boolean canFly;
     public boolean noClip;
+    private final Box sweepBox = new Box(0, 0, 0, 0, 0, 0);
+    // Per entity so ticks can run on any thread without sharing a generator or depending on the order they run in
+    protected final SplittableRandom random;
 
     public Entity(World world) {
+        this(world, world.nextEntitySeed());
+    }
+
+    public Entity(World world, long seed) {
         this.world = world;
+        this.random = new SplittableRandom(seed);
         this.goToRandomPosition();
     }
 
     public void setPosition(float x, float y, float z) {
         this.position.set(x, y, z);
         this.prevPosition.set(this.position);
-        this.box = new Box(this.position.x - this.size.x / 2, this.position.y, this.position.z - this.size.x / 2, this.position.x + this.size.x / 2, this.position.y + this.size.y, this.position.z + this.size.x / 2);
+        if (this.box == null) {
+            this.box = new Box(0, 0, 0, 0, 0, 0);
+        }
+        this.box.minX = this.position.x - this.size.x / 2;
+        this.box.minY = this.position.y;
+        this.box.minZ = this.position.z - this.size.x / 2;
+        this.box.maxX = this.position.x + this.size.x / 2;
+        this.box.maxY = this.position.y + this.size.y;
+        this.box.maxZ = this.position.z + this.size.x / 2;
     }
 
     public void goToRandomPosition() {
         this.setPosition(
-                (float) Math.random() * (float) this.world.width,
+                this.random.nextFloat() * (float) this.world.width,
                 (float) (this.world.depth + 10),
-                (float) Math.random() * (float) this.world.height
+                this.random.nextFloat() * (float) this.world.height
         );
     }
 
@@ -56,10 +72,14 @@ public class Entity {
     }
 
     public Vector3d getLook() {
-        double cosYaw = Math.cos(Math.toRadians(-this.yaw));
-        double sinYaw = Math.sin(Math.toRadians(-this.yaw));
-        double cosPitch = -Math.cos(Math.toRadians(-this.pitch));
-        double sinPitch = Math.sin(Math.toRadians(-this.pitch));
+        return getLook(this.yaw, this.pitch);
+    }
+
+    public static Vector3d getLook(float yaw, float pitch) {
+        double cosYaw = Math.cos(Math.toRadians(-yaw));
+        double sinYaw = Math.sin(Math.toRadians(-yaw));
+        double cosPitch = -Math.cos(Math.toRadians(-pitch));
+        double sinPitch = Math.sin(Math.toRadians(-pitch));
         return new Vector3d((sinYaw * cosPitch), sinPitch, (cosYaw * cosPitch));
     }
 
@@ -68,62 +88,21 @@ public class Entity {
     }
 
     public void move(float xd, float yd, float zd) {
-        float xdOrg = xd;
-        float ydOrg = yd;
-        float zdOrg = zd;
-
         if (!this.canFly || !this.noClip) {
-            List<Box> boxes = this.world.getCubes(this.box.grow(xd, yd, zd));
-
-            for (Box box : boxes) {
-                yd = box.clipYCollide(this.box, yd);
-            }
-            this.box.move(0, yd, 0);
-
-            for (Box box : boxes) {
-                xd = box.clipXCollide(this.box, xd);
-            }
-            this.box.move(xd, 0, 0);
-
-            for (Box box : boxes) {
-                zd = box.clipZCollide(this.box, zd);
-            }
-            this.box.move(0, 0, zd);
-
-            if (ydOrg != yd) {
-                this.velocity.y = 0f;
-            }
-
-            if (xdOrg != xd) {
-                this.velocity.x = 0f;
-            }
-
-            if (zdOrg != zd) {
-                this.velocity.z = 0f;
-            }
+            this.onGround = EntityPhysics.move(this.world, this.box, this.sweepBox, this.velocity, xd, yd, zd);
         } else {
             this.box.move(0, yd, 0);
             this.box.move(xd, 0, 0);
             this.box.move(0, 0, zd);
+            this.onGround = false;
         }
 
-        this.onGround = ydOrg != yd && ydOrg < 0f;
-
         this.position.x = (this.box.minX + this.box.maxX) / 2f;
         this.position.y = this.box.minY;
         this.position.z = (this.box.minZ + this.box.maxZ) / 2f;
     }
 
     protected void moveRelative(float xd, float zd, float speed) {
-        float distSquared = xd * xd + zd * zd;
-        if (distSquared >= 0.01f) {
-            float scale = speed / (float) Math.sqrt(distSquared);
-            xd *= scale;
-            zd *= scale;
-            float sin = (float) Math.sin(Math.toRadians(this.yaw));
-            float cos = (float) Math.cos(Math.toRadians(this.yaw));
-            this.velocity.x += xd * cos - zd * sin;
-            this.velocity.z += zd * cos + xd * sin;
-        }
+        EntityPhysics.moveRelative(this.velocity, this.yaw, xd, zd, speed);
     }
 }
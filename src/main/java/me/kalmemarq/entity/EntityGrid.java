@@ -0,0 +1,170 @@
+package me.kalmemarq.entity;
+
+import me.kalmemarq.World;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+// Uniform grid of chunk-sized cells holding entity ids by the cell their position falls in. Positions outside the
+// world are clamped into the border cells, whose bounds are open towards the outside to match.
+public class EntityGrid {
+    public static final int CELL_SHIFT = World.CHUNK_SHIFT;
+    public static final int CELL_SIZE = 1 << CELL_SHIFT;
+    // Entities are keyed by their position but their box sticks out of the cell by up to this much
+    private static final float MARGIN = 2.0f;
+    private static final float OUTSIDE = 1.0e6f;
+
+    private final int xCells;
+    private final int yCells;
+    private final int zCells;
+    private final int[][] members;
+    private final int[] memberCounts;
+    private int[] cellOf = new int[64];
+    private int[] slotOf = new int[64];
+
+    public EntityGrid(int width, int height, int depth) {
+        this.xCells = Math.max((width + CELL_SIZE - 1) >> CELL_SHIFT, 1);
+        this.yCells = Math.max((depth + CELL_SIZE - 1) >> CELL_SHIFT, 1);
+        this.zCells = Math.max((height + CELL_SIZE - 1) >> CELL_SHIFT, 1);
+        this.members = new int[this.xCells * this.yCells * this.zCells][];
+        this.memberCounts = new int[this.members.length];
+    }
+
+    private static int toCell(float coordinate, int cells) {
+        return Math.clamp((int) Math.floor(coordinate) >> CELL_SHIFT, 0, cells - 1);
+    }
+
+    public int getCell(float x, float y, float z) {
+        return (toCell(x, this.xCells) + toCell(y, this.yCells) * this.xCells) * this.zCells + toCell(z, this.zCells);
+    }
+
+    public int getCellCount() {
+        return this.members.length;
+    }
+
+    public void insert(int id, float x, float y, float z) {
+        if (id >= this.cellOf.length) {
+            int capacity = Math.max(this.cellOf.length * 2, id + 1);
+            this.cellOf = Arrays.copyOf(this.cellOf, capacity);
+            this.slotOf = Arrays.copyOf(this.slotOf, capacity);
+        }
+        this.addToCell(id, this.getCell(x, y, z));
+    }
+
+    // Returns whether the id changed cells
+    public boolean update(int id, float x, float y, float z) {
+        int cell = this.getCell(x, y, z);
+        if (cell == this.cellOf[id]) return false;
+        this.removeFromCell(id);
+        this.addToCell(id, cell);
+        return true;
+    }
+
+    public void remove(int id) {
+        this.removeFromCell(id);
+    }
+
+    // Follows a swap-remove in the owning store, the id from has to be inserted and to must already be removed
+    public void rename(int from, int to) {
+        int cell = this.cellOf[from];
+        int slot = this.slotOf[from];
+        this.members[cell][slot] = to;
+        this.cellOf[to] = cell;
+        this.slotOf[to] = slot;
+    }
+
+    private void addToCell(int id, int cell) {
+        int[] cellMembers = this.members[cell];
+        int count = this.memberCounts[cell];
+        if (cellMembers == null) {
+            cellMembers = new int[8];
+            this.members[cell] = cellMembers;
+        } else if (count == cellMembers.length) {
+            cellMembers = Arrays.copyOf(cellMembers, count * 2);
+            this.members[cell] = cellMembers;
+        }
+        cellMembers[count] = id;
+        this.memberCounts[cell] = count + 1;
+        this.cellOf[id] = cell;
+        this.slotOf[id] = count;
+    }
+
+    private void removeFromCell(int id) {
+        int cell = this.cellOf[id];
+        int slot = this.slotOf[id];
+        int last = --this.memberCounts[cell];
+        if (slot != last) {
+            int moved = this.members[cell][last];
+            this.members[cell][slot] = moved;
+            this.slotOf[moved] = slot;
+        }
+    }
+
+    // Calls the consumer with every id whose cell might hold an entity overlapping the box, callers test exactly
+    public void forEachCandidate(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, IntConsumer consumer) {
+        int x0 = toCell(minX - MARGIN, this.xCells);
+        int y0 = toCell(minY - MARGIN, this.yCells);
+        int z0 = toCell(minZ - MARGIN, this.zCells);
+        int x1 = toCell(maxX + MARGIN, this.xCells);
+        int y1 = toCell(maxY + MARGIN, this.yCells);
+        int z1 = toCell(maxZ + MARGIN, this.zCells);
+        for (int cy = y0; cy <= y1; ++cy) {
+            for (int cx = x0; cx <= x1; ++cx) {
+                for (int cz = z0; cz <= z1; ++cz) {
+                    this.forEachInCell((cx + cy * this.xCells) * this.zCells + cz, consumer);
+                }
+            }
+        }
+    }
+
+    // Calls the consumer with every id in the non-empty cells whose bounds pass the test, a frustum check for example
+    public int forEachCandidate(CellTest test, IntConsumer consumer) {
+        return this.forEachCell(test, (cell) -> this.memberCounts[cell] > 0, (cell) -> this.forEachInCell(cell, consumer));
+    }
+
+    // Only reads the grid's fixed layout, so a snapshot laid out by cell can be culled with it from another thread
+    public int forEachCell(CellTest test, IntPredicate occupied, IntConsumer cellConsumer) {
+        int visited = 0;
+        for (int cy = 0; cy < this.yCells; ++cy) {
+            float minY = cy == 0 ? -OUTSIDE : (cy << CELL_SHIFT) - MARGIN;
+            float maxY = cy == this.yCells - 1 ? OUTSIDE : ((cy + 1) << CELL_SHIFT) + MARGIN;
+            for (int cx = 0; cx < this.xCells; ++cx) {
+                float minX = cx == 0 ? -OUTSIDE : (cx << CELL_SHIFT) - MARGIN;
+                float maxX = cx == this.xCells - 1 ? OUTSIDE : ((cx + 1) << CELL_SHIFT) + MARGIN;
+                for (int cz = 0; cz < this.zCells; ++cz) {
+                    int cell = (cx + cy * this.xCells) * this.zCells + cz;
+                    if (!occupied.test(cell)) continue;
+
+                    float minZ = cz == 0 ? -OUTSIDE : (cz << CELL_SHIFT) - MARGIN;
+                    float maxZ = cz == this.zCells - 1 ? OUTSIDE : ((cz + 1) << CELL_SHIFT) + MARGIN;
+                    if (!test.test(minX, minY, minZ, maxX, maxY, maxZ)) continue;
+
+                    cellConsumer.accept(cell);
+                    ++visited;
+                }
+            }
+        }
+        return visited;
+    }
+
+    public int getMemberCount(int cell) {
+        return this.memberCounts[cell];
+    }
+
+    // Only the first getMemberCount(cell) entries are valid, null for cells that never held anything
+    public int[] getMembers(int cell) {
+        return this.members[cell];
+    }
+
+    private void forEachInCell(int cell, IntConsumer consumer) {
+        int[] cellMembers = this.members[cell];
+        for (int i = 0, count = this.memberCounts[cell]; i < count; ++i) {
+            consumer.accept(cellMembers[i]);
+        }
+    }
+
+    public interface CellTest {
+        boolean test(float minX, float minY, float minZ, float maxX, float maxY, float maxZ);
+    }
+}
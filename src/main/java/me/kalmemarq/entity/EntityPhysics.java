@@ -0,0 +1,57 @@
+package me.kalmemarq.entity;
+
+import me.kalmemarq.World;
+import me.kalmemarq.util.Box;
+import org.joml.Vector3f;
+
+// Movement shared by Entity and ZombieStore, which keeps the same state in arrays and passes it through scratch objects
+public final class EntityPhysics {
+    private EntityPhysics() {
+    }
+
+    // Accelerates by speed along (xd, zd) turned by the yaw in degrees
+    public static void moveRelative(Vector3f velocity, float yaw, float xd, float zd, float speed) {
+        float distSquared = xd * xd + zd * zd;
+        if (distSquared >= 0.01f) {
+            float scale = speed / (float) Math.sqrt(distSquared);
+            xd *= scale;
+            zd *= scale;
+            float sin = (float) Math.sin(Math.toRadians(yaw));
+            float cos = (float) Math.cos(Math.toRadians(yaw));
+            velocity.x += xd * cos - zd * sin;
+            velocity.z += zd * cos + xd * sin;
+        }
+    }
+
+    // Moves the box by the delta clipped against solid blocks, y first. Velocity along an axis that hit something is
+    // zeroed; returns whether the box landed on something.
+    public static boolean move(World world, Box box, Box sweep, Vector3f velocity, float xd, float yd, float zd) {
+        float xdOrg = xd;
+        float ydOrg = yd;
+        float zdOrg = zd;
+        box.grow(xd, yd, zd, sweep);
+
+        yd = world.clipYCollide(sweep, box, yd);
+        box.move(0, yd, 0);
+
+        xd = world.clipXCollide(sweep, box, xd);
+        box.move(xd, 0, 0);
+
+        zd = world.clipZCollide(sweep, box, zd);
+        box.move(0, 0, zd);
+
+        if (ydOrg != yd) {
+            velocity.y = 0f;
+        }
+
+        if (xdOrg != xd) {
+            velocity.x = 0f;
+        }
+
+        if (zdOrg != zd) {
+            velocity.z = 0f;
+        }
+
+        return ydOrg != yd && ydOrg < 0f;
+    }
+}
@@ -0,0 +1,70 @@
+package me.kalmemarq.entity;
+
+import java.io.Closeable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Ticks entities as one fork/join phase over index ranges. Entity ticks only read the world and write their own
+// state, so the result does not depend on how the range is split or how many threads run it. Anything that changes
+// the collection itself, like removing dead entities, has to happen after tick returns.
+public class EntityTicker implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    public EntityTicker(int parallelism) {
+        this(parallelism, DEFAULT_BATCH_SIZE);
+    }
+
+    public EntityTicker(int parallelism, int batchSize) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    public void tick(int count, RangeTicker ticker) {
+        if (count <= this.batchSize) {
+            ticker.tick(0, count);
+        } else {
+            this.pool.invoke(new TickTask(ticker, 0, count, this.batchSize));
+        }
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    public interface RangeTicker {
+        void tick(int from, int to);
+    }
+
+    private static class TickTask extends RecursiveAction {
+        private final RangeTicker ticker;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+
+        private TickTask(RangeTicker ticker, int from, int to, int batchSize) {
+            this.ticker = ticker;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.batchSize) {
+                this.ticker.tick(this.from, this.to);
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new TickTask(this.ticker, this.from, middle, this.batchSize), new TickTask(this.ticker, middle, this.to, this.batchSize));
+        }
+    }
+}
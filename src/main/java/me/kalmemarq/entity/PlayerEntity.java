@@ -1,12 +1,12 @@
 package me.kalmemarq.entity;
 
-import me.kalmemarq.Game;
 import me.kalmemarq.World;
 import me.kalmemarq.util.BlockHitResult;
-import me.kalmemarq.util.Keybinding;
 import org.joml.Vector3d;
 
 public class PlayerEntity extends Entity {
+    public PlayerInput input = PlayerInput.NONE;
+
     public PlayerEntity(World world) {
         super(world);
     }
@@ -21,30 +21,33 @@ public class PlayerEntity extends Entity {
     @Override
     public void tick() {
         super.tick();
+        PlayerInput input = this.input;
+        this.yaw = input.yaw();
+        this.pitch = input.pitch();
         float xd = 0;
         float zd = 0;
 
-        if (Keybinding.FOWARDS.isPressed(Game.getInstance().getWindow())) {
+        if (input.forwards()) {
             zd -= 1;
         }
 
-        if (Keybinding.BACKWARD.isPressed(Game.getInstance().getWindow())) {
+        if (input.backward()) {
             zd += 1;
         }
 
-        if (Keybinding.STRAFE_LEFT.isPressed(Game.getInstance().getWindow())) {
+        if (input.strafeLeft()) {
             xd -= 1;
         }
 
-        if (Keybinding.STRAFE_RIGHT.isPressed(Game.getInstance().getWindow())) {
+        if (input.strafeRight()) {
             xd += 1;
         }
 
-        if ((this.onGround || this.canFly) && Keybinding.JUMP.isPressed(Game.getInstance().getWindow())) {
+        if ((this.onGround || this.canFly) && input.jump()) {
             this.velocity.y = 0.12f;
         }
 
-        if (Keybinding.DESCEND.isPressed(Game.getInstance().getWindow())) {
+        if (input.descend()) {
             this.velocity.y = -0.12f;
         }
 
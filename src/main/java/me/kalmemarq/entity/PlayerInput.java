@@ -0,0 +1,6 @@
+package me.kalmemarq.entity;
+
+// Sampled from the window on the render thread and read by the player's tick on the simulation thread
+public record PlayerInput(boolean forwards, boolean backward, boolean strafeLeft, boolean strafeRight, boolean jump, boolean descend, float yaw, float pitch) {
+    public static final PlayerInput NONE = new PlayerInput(false, false, false, false, false, false, 90f, 0f);
+}
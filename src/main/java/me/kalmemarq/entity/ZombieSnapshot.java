@@ -0,0 +1,105 @@
+package me.kalmemarq.entity;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Render-side copy of the zombie state after a tick. Zombies are laid out by grid cell, so the render thread can cull
+// whole cells with the grid's fixed layout without touching the store the simulation thread is writing.
+public class ZombieSnapshot {
+    private static final float HALF_WIDTH = ZombieStore.WIDTH / 2.0f;
+
+    private final EntityGrid grid;
+    private final int[] cellStarts;
+    private int size;
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] z = new float[0];
+    private float[] prevX = new float[0];
+    private float[] prevY = new float[0];
+    private float[] prevZ = new float[0];
+    private float[] yaw = new float[0];
+    private float[] timeOffset = new float[0];
+
+    public ZombieSnapshot(EntityGrid grid) {
+        this.grid = grid;
+        this.cellStarts = new int[grid.getCellCount() + 1];
+    }
+
+    public void copyFrom(ZombieStore store) {
+        if (store.getGrid() != this.grid) {
+            throw new IllegalStateException("Snapshot was created for a different grid");
+        }
+
+        int count = store.size();
+        if (count > this.x.length) {
+            int capacity = Math.max(count, this.x.length * 2);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            this.prevX = Arrays.copyOf(this.prevX, capacity);
+            this.prevY = Arrays.copyOf(this.prevY, capacity);
+            this.prevZ = Arrays.copyOf(this.prevZ, capacity);
+            this.yaw = Arrays.copyOf(this.yaw, capacity);
+            this.timeOffset = Arrays.copyOf(this.timeOffset, capacity);
+        }
+
+        int n = 0;
+        for (int cell = 0, cellCount = this.grid.getCellCount(); cell < cellCount; ++cell) {
+            this.cellStarts[cell] = n;
+            int[] members = this.grid.getMembers(cell);
+            for (int j = 0, memberCount = this.grid.getMemberCount(cell); j < memberCount; ++j) {
+                int i = members[j];
+                this.x[n] = store.getX(i);
+                this.y[n] = store.getY(i);
+                this.z[n] = store.getZ(i);
+                this.prevX[n] = store.getPrevX(i);
+                this.prevY[n] = store.getPrevY(i);
+                this.prevZ[n] = store.getPrevZ(i);
+                this.yaw[n] = store.getYaw(i);
+                this.timeOffset[n] = store.getTimeOffset(i);
+                ++n;
+            }
+        }
+        this.cellStarts[this.grid.getCellCount()] = n;
+        this.size = n;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // Calls the consumer with every snapshot index whose box at tickDelta passes the test, looking only into the
+    // non-empty cells whose bounds pass it
+    public int forEachVisible(EntityGrid.CellTest test, float tickDelta, IntConsumer consumer) {
+        return this.grid.forEachCell(test, (cell) -> this.cellStarts[cell + 1] > this.cellStarts[cell], (cell) -> {
+            for (int i = this.cellStarts[cell], end = this.cellStarts[cell + 1]; i < end; ++i) {
+                float x = this.getLerpedX(i, tickDelta);
+                float y = this.getLerpedY(i, tickDelta);
+                float z = this.getLerpedZ(i, tickDelta);
+                if (test.test(x - HALF_WIDTH, y, z - HALF_WIDTH, x + HALF_WIDTH, y + ZombieStore.HEIGHT, z + HALF_WIDTH)) {
+                    consumer.accept(i);
+                }
+            }
+        });
+    }
+
+    public float getLerpedX(int index, float tickDelta) {
+        return org.joml.Math.lerp(this.prevX[index], this.x[index], tickDelta);
+    }
+
+    public float getLerpedY(int index, float tickDelta) {
+        return org.joml.Math.lerp(this.prevY[index], this.y[index], tickDelta);
+    }
+
+    public float getLerpedZ(int index, float tickDelta) {
+        return org.joml.Math.lerp(this.prevZ[index], this.z[index], tickDelta);
+    }
+
+    public float getYaw(int index) {
+        return this.yaw[index];
+    }
+
+    public float getTimeOffset(int index) {
+        return this.timeOffset[index];
+    }
+}
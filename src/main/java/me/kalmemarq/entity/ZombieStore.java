@@ -0,0 +1,359 @@
+package me.kalmemarq.entity;
+
+import me.kalmemarq.World;
+import me.kalmemarq.util.Box;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Every zombie as one index into parallel primitive arrays, so ticking, culling and instance upload walk memory
+// linearly. Removal moves the last zombie into the hole, which keeps the arrays dense but changes its index.
+public class ZombieStore {
+    public static final float WIDTH = 0.6f;
+    public static final float HEIGHT = 1.8f;
+    public static final float REMOVAL_Y = -64.0f;
+    private static final float HALF_WIDTH = WIDTH / 2.0f;
+
+    private final World world;
+    private final EntityGrid grid;
+    private int size;
+    private float[] x;
+    private float[] y;
+    private float[] z;
+    private float[] prevX;
+    private float[] prevY;
+    private float[] prevZ;
+    private float[] velocityX;
+    private float[] velocityY;
+    private float[] velocityZ;
+    private float[] minX;
+    private float[] minY;
+    private float[] minZ;
+    private float[] maxX;
+    private float[] maxY;
+    private float[] maxZ;
+    private float[] yaw;
+    private double[] yawVelocity;
+    private float[] timeOffset;
+    private boolean[] onGround;
+    // SplitMix64 state per zombie, the same generator SplittableRandom uses without an object per zombie
+    private long[] randomState;
+
+    public ZombieStore(World world) {
+        this(world, 64);
+    }
+
+    public ZombieStore(World world, int initialCapacity) {
+        this.world = world;
+        this.grid = new EntityGrid(world.width, world.height, world.depth);
+        this.allocate(Math.max(initialCapacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        this.x = this.resize(this.x, capacity);
+        this.y = this.resize(this.y, capacity);
+        this.z = this.resize(this.z, capacity);
+        this.prevX = this.resize(this.prevX, capacity);
+        this.prevY = this.resize(this.prevY, capacity);
+        this.prevZ = this.resize(this.prevZ, capacity);
+        this.velocityX = this.resize(this.velocityX, capacity);
+        this.velocityY = this.resize(this.velocityY, capacity);
+        this.velocityZ = this.resize(this.velocityZ, capacity);
+        this.minX = this.resize(this.minX, capacity);
+        this.minY = this.resize(this.minY, capacity);
+        this.minZ = this.resize(this.minZ, capacity);
+        this.maxX = this.resize(this.maxX, capacity);
+        this.maxY = this.resize(this.maxY, capacity);
+        this.maxZ = this.resize(this.maxZ, capacity);
+        this.yaw = this.resize(this.yaw, capacity);
+        this.timeOffset = this.resize(this.timeOffset, capacity);
+        this.yawVelocity = this.yawVelocity == null ? new double[capacity] : Arrays.copyOf(this.yawVelocity, capacity);
+        this.onGround = this.onGround == null ? new boolean[capacity] : Arrays.copyOf(this.onGround, capacity);
+        this.randomState = this.randomState == null ? new long[capacity] : Arrays.copyOf(this.randomState, capacity);
+    }
+
+    private float[] resize(float[] array, int capacity) {
+        return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int add(long seed) {
+        if (this.size == this.x.length) {
+            this.allocate(this.x.length * 2);
+        }
+
+        int index = this.size++;
+        this.randomState[index] = seed;
+        this.yaw[index] = 90.0f;
+        this.yawVelocity[index] = 0.0d;
+        this.velocityX[index] = 0.0f;
+        this.velocityY[index] = 0.0f;
+        this.velocityZ[index] = 0.0f;
+        this.onGround[index] = false;
+        this.grid.insert(index, 0.0f, 0.0f, 0.0f);
+        this.goToRandomPosition(index);
+        this.timeOffset[index] = this.nextFloat(index) * 1239813f;
+        return index;
+    }
+
+    public void setPosition(int index, float x, float y, float z) {
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+        this.prevX[index] = x;
+        this.prevY[index] = y;
+        this.prevZ[index] = z;
+        this.minX[index] = x - HALF_WIDTH;
+        this.minY[index] = y;
+        this.minZ[index] = z - HALF_WIDTH;
+        this.maxX[index] = x + HALF_WIDTH;
+        this.maxY[index] = y + HEIGHT;
+        this.maxZ[index] = z + HALF_WIDTH;
+        this.grid.update(index, x, y, z);
+    }
+
+    public void goToRandomPosition(int index) {
+        this.setPosition(index, this.nextFloat(index) * (float) this.world.width, (float) (this.world.depth + 10), this.nextFloat(index) * (float) this.world.height);
+    }
+
+    // Only touches the zombies in [from, to), so disjoint ranges can be ticked in parallel
+    public void tick(int from, int to) {
+        Box box = new Box(0, 0, 0, 0, 0, 0);
+        Box sweep = new Box(0, 0, 0, 0, 0, 0);
+        Vector3f velocity = new Vector3f();
+        for (int i = from; i < to; ++i) {
+            this.tick(i, box, sweep, velocity);
+        }
+    }
+
+    private void tick(int i, Box box, Box sweep, Vector3f velocity) {
+        this.prevX[i] = this.x[i];
+        this.prevY[i] = this.y[i];
+        this.prevZ[i] = this.z[i];
+
+        this.yaw[i] += (float) this.yawVelocity[i];
+        this.yawVelocity[i] *= 0.99d;
+        this.yawVelocity[i] += (this.nextDouble(i) - this.nextDouble(i)) * this.nextDouble(i) * this.nextDouble(i) * 0.01d;
+
+        float xd = (float) Math.sin(this.yaw[i]);
+        float zd = (float) Math.cos(this.yaw[i]);
+
+        if (this.onGround[i] && this.nextDouble(i) < 0.01d) {
+            this.velocityY[i] = 0.12F;
+        }
+
+        this.velocityY[i] -= 0.005f;
+
+        float speed = this.onGround[i] ? 0.02f : 0.005f;
+
+        velocity.set(this.velocityX[i], this.velocityY[i], this.velocityZ[i]);
+        EntityPhysics.moveRelative(velocity, this.yaw[i], xd, zd, speed);
+        this.move(i, box, sweep, velocity);
+        this.velocityX[i] = velocity.x;
+        this.velocityY[i] = velocity.y;
+        this.velocityZ[i] = velocity.z;
+
+        this.velocityX[i] *= 0.91f;
+        this.velocityY[i] *= 0.98f;
+        this.velocityZ[i] *= 0.91f;
+
+        if (this.onGround[i]) {
+            this.velocityX[i] *= 0.8f;
+            this.velocityY[i] = 0.0f;
+            this.velocityZ[i] *= 0.8f;
+        }
+    }
+
+    // The boxes and velocity are per range scratch, loaded from and stored back to the arrays
+    private void move(int i, Box box, Box sweep, Vector3f velocity) {
+        box.minX = this.minX[i];
+        box.minY = this.minY[i];
+        box.minZ = this.minZ[i];
+        box.maxX = this.maxX[i];
+        box.maxY = this.maxY[i];
+        box.maxZ = this.maxZ[i];
+        this.onGround[i] = EntityPhysics.move(this.world, box, sweep, velocity, velocity.x, velocity.y, velocity.z);
+
+        this.minX[i] = box.minX;
+        this.minY[i] = box.minY;
+        this.minZ[i] = box.minZ;
+        this.maxX[i] = box.maxX;
+        this.maxY[i] = box.maxY;
+        this.maxZ[i] = box.maxZ;
+        this.x[i] = (box.minX + box.maxX) / 2f;
+        this.y[i] = box.minY;
+        this.z[i] = (box.minZ + box.maxZ) / 2f;
+    }
+
+    // Moves zombies whose position crossed into another grid cell, ticks leave the grid alone so they can run in parallel
+    public int updateGrid() {
+        int moved = 0;
+        for (int i = 0; i < this.size; ++i) {
+            if (this.grid.update(i, this.x[i], this.y[i], this.z[i])) {
+                ++moved;
+            }
+        }
+        return moved;
+    }
+
+    // Swap-removes every zombie that fell out of the world, must not run while a tick phase is in progress
+    public int removeFallen() {
+        int removed = 0;
+        int i = 0;
+        while (i < this.size) {
+            if (this.y[i] < REMOVAL_Y) {
+                this.remove(i);
+                ++removed;
+            } else {
+                ++i;
+            }
+        }
+        return removed;
+    }
+
+    public void remove(int index) {
+        int last = --this.size;
+        this.grid.remove(index);
+        if (index != last) {
+            this.grid.rename(last, index);
+            this.x[index] = this.x[last];
+            this.y[index] = this.y[last];
+            this.z[index] = this.z[last];
+            this.prevX[index] = this.prevX[last];
+            this.prevY[index] = this.prevY[last];
+            this.prevZ[index] = this.prevZ[last];
+            this.velocityX[index] = this.velocityX[last];
+            this.velocityY[index] = this.velocityY[last];
+            this.velocityZ[index] = this.velocityZ[last];
+            this.minX[index] = this.minX[last];
+            this.minY[index] = this.minY[last];
+            this.minZ[index] = this.minZ[last];
+            this.maxX[index] = this.maxX[last];
+            this.maxY[index] = this.maxY[last];
+            this.maxZ[index] = this.maxZ[last];
+            this.yaw[index] = this.yaw[last];
+            this.yawVelocity[index] = this.yawVelocity[last];
+            this.timeOffset[index] = this.timeOffset[last];
+            this.onGround[index] = this.onGround[last];
+            this.randomState[index] = this.randomState[last];
+        }
+    }
+
+    // Zombies whose box intersects the given box. The consumer must not add or remove zombies.
+    public void forEachInBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, IntConsumer consumer) {
+        this.grid.forEachCandidate(minX, minY, minZ, maxX, maxY, maxZ, (i) -> {
+            if (this.minX[i] < maxX && this.maxX[i] > minX && this.minY[i] < maxY && this.maxY[i] > minY && this.minZ[i] < maxZ && this.maxZ[i] > minZ) {
+                consumer.accept(i);
+            }
+        });
+    }
+
+    // Zombies whose box comes within radius of the point
+    public void forEachInRadius(float x, float y, float z, float radius, IntConsumer consumer) {
+        float radiusSquared = radius * radius;
+        this.grid.forEachCandidate(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius, (i) -> {
+            float dx = x - Math.clamp(x, this.minX[i], this.maxX[i]);
+            float dy = y - Math.clamp(y, this.minY[i], this.maxY[i]);
+            float dz = z - Math.clamp(z, this.minZ[i], this.maxZ[i]);
+            if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                consumer.accept(i);
+            }
+        });
+    }
+
+    // Zombies whose box passes the test, only the cells that pass it are looked at. Returns the number of cells visited.
+    public int forEachVisible(EntityGrid.CellTest test, IntConsumer consumer) {
+        return this.grid.forEachCandidate(test, (i) -> {
+            if (test.test(this.minX[i], this.minY[i], this.minZ[i], this.maxX[i], this.maxY[i], this.maxZ[i])) {
+                consumer.accept(i);
+            }
+        });
+    }
+
+    public EntityGrid getGrid() {
+        return this.grid;
+    }
+
+    private long nextLong(int index) {
+        long z = (this.randomState[index] += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private double nextDouble(int index) {
+        return (this.nextLong(index) >>> 11) * 0x1.0p-53;
+    }
+
+    private float nextFloat(int index) {
+        return (this.nextLong(index) >>> 40) * 0x1.0p-24f;
+    }
+
+    public float getX(int index) {
+        return this.x[index];
+    }
+
+    public float getY(int index) {
+        return this.y[index];
+    }
+
+    public float getZ(int index) {
+        return this.z[index];
+    }
+
+    public float getPrevX(int index) {
+        return this.prevX[index];
+    }
+
+    public float getPrevY(int index) {
+        return this.prevY[index];
+    }
+
+    public float getPrevZ(int index) {
+        return this.prevZ[index];
+    }
+
+    public float getMinX(int index) {
+        return this.minX[index];
+    }
+
+    public float getMinY(int index) {
+        return this.minY[index];
+    }
+
+    public float getMinZ(int index) {
+        return this.minZ[index];
+    }
+
+    public float getMaxX(int index) {
+        return this.maxX[index];
+    }
+
+    public float getMaxY(int index) {
+        return this.maxY[index];
+    }
+
+    public float getMaxZ(int index) {
+        return this.maxZ[index];
+    }
+
+    public float getYaw(int index) {
+        return this.yaw[index];
+    }
+
+    public float getTimeOffset(int index) {
+        return this.timeOffset[index];
+    }
+
+    public boolean isOnGround(int index) {
+        return this.onGround[index];
+    }
+
+    public long getMemoryUsage() {
+        return (long) this.x.length * (17 * Float.BYTES + Double.BYTES + 1 + Long.BYTES);
+    }
+}
@@ -2,7 +2,6 @@ package me.kalmemarq.entity.model;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-import me.kalmemarq.entity.Entity;
 import me.kalmemarq.render.MatrixStack;
 import me.kalmemarq.render.vertex.BufferBuilder;
 import me.kalmemarq.util.IOUtils;
@@ -15,7 +14,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public abstract class Model<E extends Entity> {
+public abstract class Model {
     public static Model.ModelPart loadRoot(String name) {
         try {
             return Model.ModelPart.loadFromJson(IOUtils.OBJECT_MAPPER.readTree(Files.readString(IOUtils.getResourcesPath().resolve("models/" + name + ".json"))));
@@ -24,8 +23,6 @@ public abstract class Model<E extends Entity> {
         }
     }
 
-    abstract public void render(BufferBuilder builder, E entity, float tickDelta);
-
     public static class ModelPart {
         public float yaw;
         public float pitch;
@@ -53,6 +50,14 @@ public abstract class Model<E extends Entity> {
             return this.children.get(name);
         }
 
+        public List<Cuboid> getCuboids() {
+            return this.cuboids;
+        }
+
+        public boolean hasChildren() {
+            return !this.children.isEmpty();
+        }
+
         public ModelPart addCuboid(int u, int v, float offsetX, float offsetY, float offsetZ, float sizeX, float sizeY, float sizeZ, float textureWidth, float textureHeight) {
             this.cuboids.add(new Cuboid(u, v, offsetX, offsetY, offsetZ, sizeX, sizeY, sizeZ, textureWidth, textureHeight));
             return this;
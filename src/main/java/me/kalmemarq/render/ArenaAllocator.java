@@ -0,0 +1,170 @@
+package me.kalmemarq.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Best-fit sub-allocator over a linear range of units, it knows nothing about GL so it can be exercised on its own
+public class ArenaAllocator {
+    private final TreeMap<Integer, Integer> freeBlocks = new TreeMap<>();
+    private final TreeMap<Integer, Allocation> allocations = new TreeMap<>();
+    private int capacity;
+    private int used;
+
+    public ArenaAllocator(int capacity) {
+        this.capacity = capacity;
+        if (capacity > 0) {
+            this.freeBlocks.put(0, capacity);
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getUsed() {
+        return this.used;
+    }
+
+    public int getFree() {
+        return this.capacity - this.used;
+    }
+
+    public int getFreeBlockCount() {
+        return this.freeBlocks.size();
+    }
+
+    public int getAllocationCount() {
+        return this.allocations.size();
+    }
+
+    public int getLargestFreeBlock() {
+        int largest = 0;
+        for (int size : this.freeBlocks.values()) {
+            largest = Math.max(largest, size);
+        }
+        return largest;
+    }
+
+    // 0 when all free space is one block, approaching 1 as it splinters into small pieces
+    public float getFragmentation() {
+        int free = this.getFree();
+        return free == 0 ? 0.0f : 1.0f - this.getLargestFreeBlock() / (float) free;
+    }
+
+    // Returns null when no free block is large enough, the caller decides whether to compact or grow
+    public Allocation allocate(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Allocation size must be positive: " + size);
+        }
+
+        Map.Entry<Integer, Integer> best = null;
+        for (Map.Entry<Integer, Integer> entry : this.freeBlocks.entrySet()) {
+            if (entry.getValue() >= size && (best == null || entry.getValue() < best.getValue())) {
+                best = entry;
+                if (entry.getValue() == size) break;
+            }
+        }
+
+        if (best == null) return null;
+
+        int offset = best.getKey();
+        int remaining = best.getValue() - size;
+        this.freeBlocks.remove(offset);
+        if (remaining > 0) {
+            this.freeBlocks.put(offset + size, remaining);
+        }
+
+        Allocation allocation = new Allocation(offset, size);
+        this.allocations.put(offset, allocation);
+        this.used += size;
+        return allocation;
+    }
+
+    public void free(Allocation allocation) {
+        if (allocation.freed) {
+            throw new IllegalStateException("Allocation at " + allocation.offset + " was already freed");
+        }
+
+        if (this.allocations.remove(allocation.offset) != allocation) {
+            throw new IllegalStateException("Allocation at " + allocation.offset + " does not belong to this arena");
+        }
+
+        allocation.freed = true;
+        this.used -= allocation.size;
+        this.addFreeBlock(allocation.offset, allocation.size);
+    }
+
+    private void addFreeBlock(int offset, int size) {
+        Map.Entry<Integer, Integer> previous = this.freeBlocks.floorEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == offset) {
+            offset = previous.getKey();
+            size += previous.getValue();
+            this.freeBlocks.remove(offset);
+        }
+
+        Integer nextSize = this.freeBlocks.remove(offset + size);
+        if (nextSize != null) {
+            size += nextSize;
+        }
+
+        this.freeBlocks.put(offset, size);
+    }
+
+    public void grow(int newCapacity) {
+        if (newCapacity <= this.capacity) return;
+        int oldCapacity = this.capacity;
+        this.capacity = newCapacity;
+        this.addFreeBlock(oldCapacity, newCapacity - oldCapacity);
+    }
+
+    // Packs every live allocation towards offset 0 in address order, updating the handles in place.
+    // Each move is reported before the next one happens, so the mover can copy between two buffers or within one.
+    public void compact(Mover mover) {
+        List<Allocation> live = new ArrayList<>(this.allocations.values());
+        this.allocations.clear();
+        this.freeBlocks.clear();
+
+        int cursor = 0;
+        for (Allocation allocation : live) {
+            if (allocation.offset != cursor) {
+                mover.move(allocation.offset, cursor, allocation.size);
+                allocation.offset = cursor;
+            }
+            this.allocations.put(cursor, allocation);
+            cursor += allocation.size;
+        }
+
+        if (cursor < this.capacity) {
+            this.freeBlocks.put(cursor, this.capacity - cursor);
+        }
+    }
+
+    public interface Mover {
+        void move(int fromOffset, int toOffset, int size);
+    }
+
+    public static class Allocation {
+        private int offset;
+        private final int size;
+        private boolean freed;
+
+        private Allocation(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int getOffset() {
+            return this.offset;
+        }
+
+        public int getSize() {
+            return this.size;
+        }
+
+        public boolean isFreed() {
+            return this.freed;
+        }
+    }
+}
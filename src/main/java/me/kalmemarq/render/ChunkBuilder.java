@@ -0,0 +1,199 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.Block;
+import me.kalmemarq.BlockView;
+import me.kalmemarq.World;
+import me.kalmemarq.render.vertex.BufferBuilder;
+import me.kalmemarq.render.vertex.VertexLayout;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChunkBuilder implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("ChunkBuilder");
+    public static final int LAYER_COUNT = 2;
+    public static final int SCRATCH_BUFFER_SIZE = (VertexLayout.TERRAIN.stride * 4 * 6) * (World.CHUNK_SIZE * World.CHUNK_SIZE * World.CHUNK_SIZE);
+
+    private final ExecutorService executor;
+    private final int threadCount;
+    private final Queue<ByteBuffer> scratchBuffers = new ConcurrentLinkedQueue<>();
+    private final Queue<BuiltChunk> builtChunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Summed over the worker threads until the render thread's profiler takes them
+    private final AtomicLong buildNanos = new AtomicLong();
+    private final AtomicInteger buildCount = new AtomicInteger();
+    private final ThreadLocal<ChunkOcclusionGraph> occlusionGraphs = ThreadLocal.withInitial(ChunkOcclusionGraph::new);
+
+    public ChunkBuilder(int threadCount) {
+        this.threadCount = threadCount;
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+            Thread thread = new Thread(runnable, "Chunk Builder #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Using {} chunk builder threads", threadCount);
+    }
+
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    public static int getDefaultThreadCount() {
+        return Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 8);
+    }
+
+    public void schedule(WorldRenderer.Chunk chunk, int version, ChunkRendererRegion region, boolean greedyMeshing) {
+        this.pendingCount.incrementAndGet();
+        this.executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                this.builtChunks.add(this.build(chunk, version, region, greedyMeshing));
+                this.buildNanos.addAndGet(System.nanoTime() - start);
+                this.buildCount.incrementAndGet();
+            } catch (Throwable t) {
+                LOGGER.error("Failed to build chunk {} {} {}", chunk.x, chunk.y, chunk.z, t);
+            } finally {
+                this.pendingCount.decrementAndGet();
+            }
+        });
+    }
+
+    private BuiltChunk build(WorldRenderer.Chunk chunk, int version, ChunkRendererRegion region, boolean greedyMeshing) {
+        ByteBuffer scratch = this.scratchBuffers.poll();
+        if (scratch == null) {
+            scratch = MemoryUtil.memAlloc(SCRATCH_BUFFER_SIZE);
+        }
+
+        try {
+            BufferBuilder builder = new BufferBuilder(MemoryUtil.memAddress(scratch));
+            GreedyMesher greedyMesher = greedyMeshing ? new GreedyMesher() : null;
+            ByteBuffer[] layers = new ByteBuffer[LAYER_COUNT];
+            int[] vertexCounts = new int[LAYER_COUNT];
+            int[] perBlockVertexCounts = new int[LAYER_COUNT];
+
+            for (int layer = 0; layer < LAYER_COUNT; ++layer) {
+                int vertexCount;
+                if (greedyMesher != null) {
+                    vertexCount = greedyMesher.buildLayer(region, chunk.x, chunk.y, chunk.z, builder, layer);
+                    perBlockVertexCounts[layer] = greedyMesher.getFaceCount() * 4;
+                } else {
+                    vertexCount = buildLayer(region, chunk.x, chunk.y, chunk.z, builder, layer);
+                    perBlockVertexCounts[layer] = vertexCount;
+                }
+                vertexCounts[layer] = vertexCount;
+                if (vertexCount > 0) {
+                    int size = vertexCount * VertexLayout.TERRAIN.stride;
+                    layers[layer] = MemoryUtil.memAlloc(size);
+                    MemoryUtil.memCopy(MemoryUtil.memAddress(scratch), MemoryUtil.memAddress(layers[layer]), size);
+                }
+            }
+
+            long visibility = this.occlusionGraphs.get().build(region, chunk.x, chunk.y, chunk.z);
+            return new BuiltChunk(chunk, version, layers, vertexCounts, perBlockVertexCounts, visibility);
+        } finally {
+            this.scratchBuffers.add(scratch);
+        }
+    }
+
+    public static int buildLayer(BlockView view, int chunkX, int chunkY, int chunkZ, BufferBuilder builder, int layer) {
+        builder.begin();
+        for (int y = 0; y < World.CHUNK_SIZE; ++y) {
+            for (int z = 0; z < World.CHUNK_SIZE; ++z) {
+                for (int x = 0; x < World.CHUNK_SIZE; ++x) {
+                    int blockX = chunkX * World.CHUNK_SIZE + x;
+                    int blockY = chunkY * World.CHUNK_SIZE + y;
+                    int blockZ = chunkZ * World.CHUNK_SIZE + z;
+
+                    int blockId = view.getBlockId(blockX, blockY, blockZ);
+                    if (blockId == 0) continue;
+
+                    Block.render(view, builder, blockX, blockY, blockZ, view.isTopLayer(blockY), layer);
+                }
+            }
+        }
+        return builder.end();
+    }
+
+    public void upload() {
+        BuiltChunk builtChunk;
+        while ((builtChunk = this.builtChunks.poll()) != null) {
+            try {
+                builtChunk.chunk.upload(builtChunk);
+            } finally {
+                builtChunk.free();
+            }
+        }
+    }
+
+    public long takeBuildNanos() {
+        return this.buildNanos.getAndSet(0L);
+    }
+
+    public int takeBuildCount() {
+        return this.buildCount.getAndSet(0);
+    }
+
+    public int getPendingCount() {
+        return this.pendingCount.get();
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+        try {
+            if (!this.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Chunk builder threads did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        BuiltChunk builtChunk;
+        while ((builtChunk = this.builtChunks.poll()) != null) {
+            builtChunk.free();
+        }
+
+        ByteBuffer scratch;
+        while ((scratch = this.scratchBuffers.poll()) != null) {
+            MemoryUtil.memFree(scratch);
+        }
+    }
+
+    public static class BuiltChunk {
+        public final WorldRenderer.Chunk chunk;
+        public final int version;
+        public final ByteBuffer[] layers;
+        public final int[] vertexCounts;
+        public final int[] perBlockVertexCounts;
+        public final long visibility;
+
+        public BuiltChunk(WorldRenderer.Chunk chunk, int version, ByteBuffer[] layers, int[] vertexCounts, int[] perBlockVertexCounts, long visibility) {
+            this.chunk = chunk;
+            this.version = version;
+            this.layers = layers;
+            this.vertexCounts = vertexCounts;
+            this.perBlockVertexCounts = perBlockVertexCounts;
+            this.visibility = visibility;
+        }
+
+        public void free() {
+            for (int i = 0; i < this.layers.length; ++i) {
+                if (this.layers[i] != null) {
+                    MemoryUtil.memFree(this.layers[i]);
+                    this.layers[i] = null;
+                }
+            }
+        }
+    }
+}
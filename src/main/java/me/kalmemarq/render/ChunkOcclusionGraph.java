@@ -0,0 +1,106 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.BlockView;
+import me.kalmemarq.ChunkSection;
+import me.kalmemarq.World;
+import me.kalmemarq.util.Direction;
+
+import java.util.BitSet;
+
+// Flood fills the open cells of a chunk and records which pairs of faces share a connected open region
+public class ChunkOcclusionGraph {
+    public static final long ALL_VISIBLE = (1L << 36) - 1L;
+    private static final int SIZE = World.CHUNK_SIZE;
+    private static final int VOLUME = SIZE * SIZE * SIZE;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final BitSet solid = new BitSet(VOLUME);
+    private final BitSet visited = new BitSet(VOLUME);
+    private final int[] queue = new int[VOLUME];
+
+    public static boolean isVisibleThrough(long visibility, int from, int to) {
+        return (visibility & (1L << (from * 6 + to))) != 0;
+    }
+
+    public long build(BlockView view, int chunkX, int chunkY, int chunkZ) {
+        int originX = chunkX * SIZE;
+        int originY = chunkY * SIZE;
+        int originZ = chunkZ * SIZE;
+        this.solid.clear();
+        this.visited.clear();
+
+        int openCount = 0;
+        for (int y = 0; y < SIZE; ++y) {
+            for (int z = 0; z < SIZE; ++z) {
+                for (int x = 0; x < SIZE; ++x) {
+                    if (view.getBlockId(originX + x, originY + y, originZ + z) != 0) {
+                        this.solid.set(ChunkSection.getIndex(x, y, z));
+                    } else {
+                        ++openCount;
+                    }
+                }
+            }
+        }
+
+        if (openCount == VOLUME) return ALL_VISIBLE;
+        if (openCount == 0) return 0L;
+
+        long visibility = 0L;
+        for (int i = 0; i < SIZE; ++i) {
+            for (int j = 0; j < SIZE; ++j) {
+                // Only cells on the chunk border can start a region that touches a face
+                visibility |= this.fill(i, j, 0);
+                visibility |= this.fill(i, j, SIZE - 1);
+                visibility |= this.fill(i, 0, j);
+                visibility |= this.fill(i, SIZE - 1, j);
+                visibility |= this.fill(0, i, j);
+                visibility |= this.fill(SIZE - 1, i, j);
+            }
+        }
+        return visibility;
+    }
+
+    private long fill(int startX, int startY, int startZ) {
+        int start = ChunkSection.getIndex(startX, startY, startZ);
+        if (this.solid.get(start) || this.visited.get(start)) return 0L;
+
+        int faces = 0;
+        int head = 0;
+        int tail = 0;
+        this.queue[tail++] = start;
+        this.visited.set(start);
+
+        while (head < tail) {
+            int index = this.queue[head++];
+            int x = index & (SIZE - 1);
+            int z = (index >> World.CHUNK_SHIFT) & (SIZE - 1);
+            int y = index >> (World.CHUNK_SHIFT * 2);
+
+            for (Direction direction : DIRECTIONS) {
+                int nx = x + direction.normalX;
+                int ny = y + direction.normalY;
+                int nz = z + direction.normalZ;
+                if (nx < 0 || ny < 0 || nz < 0 || nx >= SIZE || ny >= SIZE || nz >= SIZE) {
+                    faces |= 1 << direction.index;
+                    continue;
+                }
+
+                int neighbor = ChunkSection.getIndex(nx, ny, nz);
+                if (this.solid.get(neighbor) || this.visited.get(neighbor)) continue;
+                this.visited.set(neighbor);
+                this.queue[tail++] = neighbor;
+            }
+        }
+
+        long visibility = 0L;
+        for (int from = 0; from < 6; ++from) {
+            if ((faces & (1 << from)) == 0) continue;
+            for (int to = 0; to < 6; ++to) {
+                if ((faces & (1 << to)) != 0) {
+                    visibility |= 1L << (from * 6 + to);
+                }
+            }
+        }
+        return visibility;
+    }
+}
@@ -0,0 +1,79 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.World;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Hands dirty chunks to the ChunkBuilder closest first, spending at most a fixed slice of each frame on snapshots
+public class ChunkRebuildScheduler {
+    private static final long BUDGET_NANOS = 2_000_000L;
+    private static final Comparator<WorldRenderer.Chunk> PRIORITY = Comparator.<WorldRenderer.Chunk>comparingInt((chunk) -> chunk.urgent ? 0 : 1)
+            .thenComparingInt((chunk) -> chunk.visible ? 0 : 1)
+            .thenComparingDouble((chunk) -> chunk.distanceSquared);
+
+    private final List<WorldRenderer.Chunk> queue = new ArrayList<>();
+    private final int maxInFlight;
+
+    public ChunkRebuildScheduler(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void enqueue(WorldRenderer.Chunk chunk) {
+        if (chunk.queued) return;
+        chunk.queued = true;
+        chunk.queuedTime = System.nanoTime();
+        this.queue.add(chunk);
+    }
+
+    // Only chunks that already wait for a rebuild can be fast-tracked
+    public void prioritize(WorldRenderer.Chunk chunk) {
+        if (chunk.queued) {
+            chunk.urgent = true;
+        }
+    }
+
+    public int size() {
+        return this.queue.size();
+    }
+
+    public long getOldestAgeNanos() {
+        long now = System.nanoTime();
+        long oldest = 0L;
+        for (WorldRenderer.Chunk chunk : this.queue) {
+            oldest = Math.max(oldest, now - chunk.queuedTime);
+        }
+        return oldest;
+    }
+
+    public int process(ChunkBuilder chunkBuilder, Frustum frustum, double cameraX, double cameraY, double cameraZ, boolean greedyMeshing) {
+        if (this.queue.isEmpty()) return 0;
+
+        for (WorldRenderer.Chunk chunk : this.queue) {
+            double dx = (chunk.x + 0.5) * World.CHUNK_SIZE - cameraX;
+            double dy = (chunk.y + 0.5) * World.CHUNK_SIZE - cameraY;
+            double dz = (chunk.z + 0.5) * World.CHUNK_SIZE - cameraZ;
+            chunk.distanceSquared = dx * dx + dy * dy + dz * dz;
+            chunk.visible = frustum.isVisible(chunk.box);
+        }
+        this.queue.sort(PRIORITY);
+
+        long start = System.nanoTime();
+        int scheduled = 0;
+        while (scheduled < this.queue.size()) {
+            WorldRenderer.Chunk chunk = this.queue.get(scheduled);
+            // Keep the worker queue short so later, closer chunks are not stuck behind far ones; edits always go through
+            if (!chunk.urgent && scheduled > 0 && (System.nanoTime() - start >= BUDGET_NANOS || chunkBuilder.getPendingCount() >= this.maxInFlight)) {
+                break;
+            }
+
+            chunk.queued = false;
+            chunk.urgent = false;
+            chunk.scheduleRebuild(chunkBuilder, greedyMeshing);
+            ++scheduled;
+        }
+        this.queue.subList(0, scheduled).clear();
+        return scheduled;
+    }
+}
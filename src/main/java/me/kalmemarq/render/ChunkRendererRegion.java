@@ -0,0 +1,53 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.BlockView;
+import me.kalmemarq.World;
+
+public class ChunkRendererRegion implements BlockView {
+    public static final int SIZE = World.CHUNK_SIZE + 2;
+
+    private final int originX;
+    private final int originY;
+    private final int originZ;
+    private final int topLayerY;
+    private final byte[] blocks;
+    private final float[] brightness;
+
+    public ChunkRendererRegion(World world, int chunkX, int chunkY, int chunkZ) {
+        this.originX = chunkX * World.CHUNK_SIZE - 1;
+        this.originY = chunkY * World.CHUNK_SIZE - 1;
+        this.originZ = chunkZ * World.CHUNK_SIZE - 1;
+        this.topLayerY = world.depth * 2 / 3;
+        this.blocks = new byte[SIZE * SIZE * SIZE];
+        this.brightness = new float[SIZE * SIZE * SIZE];
+
+        for (int y = 0; y < SIZE; ++y) {
+            for (int z = 0; z < SIZE; ++z) {
+                for (int x = 0; x < SIZE; ++x) {
+                    int i = (y * SIZE + z) * SIZE + x;
+                    this.blocks[i] = (byte) world.getBlockId(this.originX + x, this.originY + y, this.originZ + z);
+                    this.brightness[i] = world.getBrigthness(this.originX + x, this.originY + y, this.originZ + z);
+                }
+            }
+        }
+    }
+
+    private int getIndex(int x, int y, int z) {
+        return ((y - this.originY) * SIZE + (z - this.originZ)) * SIZE + (x - this.originX);
+    }
+
+    @Override
+    public int getBlockId(int x, int y, int z) {
+        return this.blocks[this.getIndex(x, y, z)];
+    }
+
+    @Override
+    public float getBrigthness(int x, int y, int z) {
+        return this.brightness[this.getIndex(x, y, z)];
+    }
+
+    @Override
+    public boolean isTopLayer(int y) {
+        return y == this.topLayerY;
+    }
+}
@@ -0,0 +1,236 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.util.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Screenshots and continuous capture without stalling the render thread. The frame is copied into one of a few
+// persistently mapped pixel buffers and fenced; once a later frame finds the fence signaled, an encoder thread copies
+// the rows out bottom-up, which flips the image for free, and writes the PNG. When every buffer is still in use or
+// the encoders are too far behind the frame is skipped rather than waited for.
+public class FrameCapture implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("Capture");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss-SSS");
+    private static final int RING_SIZE = 3;
+    // Frames copied out of the ring but not encoded yet, each holds a whole image in memory
+    private static final int MAX_QUEUED_IMAGES = 6;
+    private static final int MAP_FLAGS = GL30.GL_MAP_READ_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+
+    private final Slot[] slots = new Slot[RING_SIZE];
+    private final ExecutorService encoder;
+    private final AtomicInteger queuedImages = new AtomicInteger();
+    private final AtomicLong savedCount = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final int captureInterval;
+    private boolean screenshotRequested;
+    private Path captureDirectory;
+    private long frameIndex;
+    private int captureFrame;
+    private long droppedCount;
+
+    public FrameCapture(int captureInterval) {
+        this.captureInterval = Math.max(captureInterval, 1);
+        for (int i = 0; i < RING_SIZE; ++i) {
+            this.slots[i] = new Slot();
+        }
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        this.encoder = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "Capture Encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void requestScreenshot() {
+        this.screenshotRequested = true;
+    }
+
+    public void toggleCapture() {
+        if (this.captureDirectory != null) {
+            LOGGER.info("Stopped capturing after {} frames", this.captureFrame);
+            this.captureDirectory = null;
+            return;
+        }
+
+        Path directory = Path.of("captures", DATE_FORMATTER.format(LocalDateTime.now()));
+        if (IOUtils.ensureDirectory(directory)) {
+            LOGGER.info("Capturing every {} frames to {}", this.captureInterval, directory);
+            this.captureDirectory = directory;
+            this.captureFrame = 0;
+        }
+    }
+
+    public boolean isCapturing() {
+        return this.captureDirectory != null;
+    }
+
+    // Called once a frame after the scene is drawn into the texture, before the overlay goes on top
+    public void update(int texture, int width, int height) {
+        this.pollFences(false);
+        ++this.frameIndex;
+
+        Path path;
+        if (this.screenshotRequested) {
+            Path screenshotsPath = Path.of("screenshots");
+            if (!IOUtils.ensureDirectory(screenshotsPath)) {
+                this.screenshotRequested = false;
+                return;
+            }
+            path = screenshotsPath.resolve(DATE_FORMATTER.format(LocalDateTime.now()) + ".png");
+        } else if (this.captureDirectory != null && this.frameIndex % this.captureInterval == 0) {
+            path = this.captureDirectory.resolve(String.format("frame_%06d.png", this.captureFrame));
+        } else {
+            return;
+        }
+
+        Slot slot = this.queuedImages.get() < MAX_QUEUED_IMAGES ? this.acquire(width, height) : null;
+        if (slot == null) {
+            // A screenshot stays requested and is taken by the next frame that has room
+            ++this.droppedCount;
+            return;
+        }
+
+        if (this.screenshotRequested) {
+            this.screenshotRequested = false;
+        } else {
+            ++this.captureFrame;
+        }
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, slot.buffer);
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL45.glGetTextureImage(texture, 0, GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, width * height * 3, 0L);
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 4);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        slot.sync = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slot.path = path;
+        slot.busy = true;
+    }
+
+    private Slot acquire(int width, int height) {
+        for (Slot slot : this.slots) {
+            if (slot.busy) continue;
+            if (slot.width != width || slot.height != height) {
+                if (slot.buffer != 0) {
+                    GL15.glDeleteBuffers(slot.buffer);
+                }
+                long size = (long) width * height * 3;
+                slot.buffer = GL45.glCreateBuffers();
+                GL45.glNamedBufferStorage(slot.buffer, size, MAP_FLAGS);
+                slot.address = GL45.nglMapNamedBufferRange(slot.buffer, 0L, size, MAP_FLAGS);
+                slot.width = width;
+                slot.height = height;
+            }
+            return slot;
+        }
+        return null;
+    }
+
+    // Hands every slot whose copy has finished to the encoders; when closing it waits for the copies instead
+    private void pollFences(boolean wait) {
+        for (Slot slot : this.slots) {
+            if (slot.sync == 0L) continue;
+            int status = wait ? GL32.glClientWaitSync(slot.sync, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000_000L) : GL32.glClientWaitSync(slot.sync, 0, 0L);
+            if (status == GL32.GL_TIMEOUT_EXPIRED) continue;
+            if (status == GL32.GL_WAIT_FAILED) {
+                throw new IllegalStateException("Waiting on a capture fence failed");
+            }
+
+            GL32.glDeleteSync(slot.sync);
+            slot.sync = 0L;
+            this.queuedImages.incrementAndGet();
+            Path path = slot.path;
+            this.encoder.execute(() -> this.encode(slot, path));
+        }
+    }
+
+    private void encode(Slot slot, Path path) {
+        long start = System.nanoTime();
+        NativeImage image = new NativeImage.SimpleNativeImage(slot.width, slot.height, NativeImage.PixelFormat.RGB);
+        try {
+            // GL rows start at the bottom, copying them in reverse order is the vertical flip
+            long rowSize = (long) slot.width * 3;
+            for (int y = 0; y < slot.height; ++y) {
+                MemoryUtil.memCopy(slot.address + rowSize * (slot.height - 1 - y), image.pointer + rowSize * y, rowSize);
+            }
+            slot.busy = false;
+            image.saveTo(path);
+            this.savedCount.incrementAndGet();
+            this.encodeNanos.addAndGet(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            slot.busy = false;
+            LOGGER.error("Failed to save {}", path, e);
+        } finally {
+            image.close();
+            this.queuedImages.decrementAndGet();
+        }
+    }
+
+    public long getSavedCount() {
+        return this.savedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    public double getAverageEncodeMillis() {
+        long saved = this.savedCount.get();
+        return saved == 0L ? 0.0d : this.encodeNanos.get() / 1.0e6d / saved;
+    }
+
+    public int getCaptureInterval() {
+        return this.captureInterval;
+    }
+
+    // Finishes the frames already read back, so the last screenshot before quitting is not lost
+    @Override
+    public void close() {
+        this.pollFences(true);
+        this.encoder.shutdown();
+        try {
+            if (!this.encoder.awaitTermination(30L, TimeUnit.SECONDS)) {
+                LOGGER.warn("Gave up waiting for {} images to be encoded", this.queuedImages.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Slot slot : this.slots) {
+            if (slot.sync != 0L) {
+                GL32.glDeleteSync(slot.sync);
+            }
+            if (slot.buffer != 0 && !slot.busy) {
+                GL15.glDeleteBuffers(slot.buffer);
+            }
+        }
+    }
+
+    private static class Slot {
+        private int buffer;
+        private long address;
+        private int width;
+        private int height;
+        private long sync;
+        private Path path;
+        // Set from the readback until an encoder has copied the pixels out
+        private volatile boolean busy;
+    }
+}
@@ -3,6 +3,7 @@ package me.kalmemarq.render;
 import me.kalmemarq.render.vertex.BufferBuilder;
 import me.kalmemarq.render.vertex.VertexBuffer;
 import me.kalmemarq.render.vertex.VertexLayout;
+import me.kalmemarq.util.Profiler;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.opengl.GL45;
 import org.lwjgl.system.MemoryStack;
@@ -122,11 +123,14 @@ public class Framebuffer implements Closeable {
     }
 
     public void draw() {
+        Profiler profiler = Profiler.get();
+        profiler.push("blit");
         this.blitShader.bind();
         GL45.glBindTextureUnit(0, this.colorAttachmentTxr);
         this.blitShader.setUniform("uSampler0", 0);
         this.vertexBuffer.bind();
         this.vertexBuffer.draw();
+        profiler.pop();
     }
 
     private void dispose() {
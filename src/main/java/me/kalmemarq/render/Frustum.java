@@ -13,7 +13,11 @@ public class Frustum {
     }
 
     public boolean isVisible(Box box) {
-        int result = this.frustumIntersection.intersectAab(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+        return this.isVisible(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+    }
+
+    public boolean isVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = this.frustumIntersection.intersectAab(minX, minY, minZ, maxX, maxY, maxZ);
         return result == FrustumIntersection.INSIDE || result == FrustumIntersection.INTERSECT;
     }
 }
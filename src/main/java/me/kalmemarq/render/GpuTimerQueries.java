@@ -0,0 +1,62 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.util.Profiler;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+// Pool of GL_TIMESTAMP queries for the render thread's profiler. Results are only read once
+// GL_QUERY_RESULT_AVAILABLE says so, a few frames later, so timing never stalls the pipeline.
+public class GpuTimerQueries implements Profiler.GpuTimer, Closeable {
+    private static final int MAX_QUERIES = 2048;
+
+    private int[] queries = new int[64];
+    private int[] free = new int[64];
+    private int queryCount;
+    private int freeCount;
+
+    @Override
+    public int timestamp() {
+        int query;
+        if (this.freeCount > 0) {
+            query = this.free[--this.freeCount];
+        } else if (this.queryCount < MAX_QUERIES) {
+            if (this.queryCount == this.queries.length) {
+                this.queries = Arrays.copyOf(this.queries, this.queryCount * 2);
+                this.free = Arrays.copyOf(this.free, this.queryCount * 2);
+            }
+            query = GL15.glGenQueries();
+            this.queries[this.queryCount++] = query;
+        } else {
+            return NONE;
+        }
+        GL33.glQueryCounter(query, GL33.GL_TIMESTAMP);
+        return query;
+    }
+
+    @Override
+    public long poll(int query) {
+        if (GL15.glGetQueryObjecti(query, GL15.GL_QUERY_RESULT_AVAILABLE) == GL15.GL_FALSE) {
+            return -1L;
+        }
+        return GL33.glGetQueryObjecti64(query, GL15.GL_QUERY_RESULT);
+    }
+
+    @Override
+    public void release(int query) {
+        this.free[this.freeCount++] = query;
+    }
+
+    public int getQueryCount() {
+        return this.queryCount;
+    }
+
+    @Override
+    public void close() {
+        GL15.glDeleteQueries(Arrays.copyOf(this.queries, this.queryCount));
+        this.queryCount = 0;
+        this.freeCount = 0;
+    }
+}
@@ -0,0 +1,162 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.Block;
+import me.kalmemarq.BlockView;
+import me.kalmemarq.World;
+import me.kalmemarq.render.vertex.BufferBuilder;
+import me.kalmemarq.util.Direction;
+
+public class GreedyMesher {
+    private static final int SIZE = World.CHUNK_SIZE;
+
+    private final int[] mask = new int[SIZE * SIZE];
+    private int faceCount;
+
+    public int getFaceCount() {
+        return this.faceCount;
+    }
+
+    public int buildLayer(BlockView view, int chunkX, int chunkY, int chunkZ, BufferBuilder builder, int layer) {
+        int originX = chunkX * SIZE;
+        int originY = chunkY * SIZE;
+        int originZ = chunkZ * SIZE;
+        this.faceCount = 0;
+        builder.begin();
+
+        for (Direction direction : Direction.values()) {
+            for (int slice = 0; slice < SIZE; ++slice) {
+                this.fillMask(view, originX, originY, originZ, direction, slice, layer);
+                this.mergeMask(builder, direction, slice);
+            }
+        }
+
+        return builder.end();
+    }
+
+    private void fillMask(BlockView view, int originX, int originY, int originZ, Direction direction, int slice, int layer) {
+        float faceShade = switch (direction) {
+            case DOWN, UP -> 1.0f;
+            case NORTH, SOUTH -> 0.8f;
+            case WEST, EAST -> 0.6f;
+        };
+
+        for (int j = 0; j < SIZE; ++j) {
+            for (int i = 0; i < SIZE; ++i) {
+                int x;
+                int y;
+                int z;
+                switch (direction) {
+                    case DOWN, UP -> { x = i; y = slice; z = j; }
+                    case NORTH, SOUTH -> { x = i; y = j; z = slice; }
+                    default -> { x = slice; y = j; z = i; }
+                }
+
+                int blockX = originX + x;
+                int blockY = originY + y;
+                int blockZ = originZ + z;
+                int key = 0;
+
+                if (view.getBlockId(blockX, blockY, blockZ) != 0 && view.getBlockId(blockX + direction.normalX, blockY + direction.normalY, blockZ + direction.normalZ) == 0) {
+                    float light = view.getBrigthness(blockX + direction.normalX, blockY + direction.normalY, blockZ + direction.normalZ) * faceShade;
+                    if (light == faceShade ^ layer == 1) {
+                        int tile = view.isTopLayer(blockY) ? Block.GRASS_TILE : Block.STONE_TILE;
+                        key = (Math.round(light * 20.0f) << 9) | (tile << 1) | 1;
+                        ++this.faceCount;
+                    }
+                }
+
+                this.mask[j * SIZE + i] = key;
+            }
+        }
+    }
+
+    private void mergeMask(BufferBuilder builder, Direction direction, int slice) {
+        for (int j = 0; j < SIZE; ++j) {
+            for (int i = 0; i < SIZE; ) {
+                int key = this.mask[j * SIZE + i];
+                if (key == 0) {
+                    ++i;
+                    continue;
+                }
+
+                int w = 1;
+                while (i + w < SIZE && this.mask[j * SIZE + i + w] == key) {
+                    ++w;
+                }
+
+                int h = 1;
+                expand:
+                while (j + h < SIZE) {
+                    for (int k = 0; k < w; ++k) {
+                        if (this.mask[(j + h) * SIZE + i + k] != key) {
+                            break expand;
+                        }
+                    }
+                    ++h;
+                }
+
+                for (int dj = 0; dj < h; ++dj) {
+                    for (int di = 0; di < w; ++di) {
+                        this.mask[(j + dj) * SIZE + i + di] = 0;
+                    }
+                }
+
+                emitQuad(builder, direction, slice, i, j, w, h, (key >>> 9) / 20.0f, (key >>> 1) & 0xFF);
+                i += w;
+            }
+        }
+    }
+
+    // Same corner order and UV orientation as Block.render, stretched over a w by h rectangle
+    private static void emitQuad(BufferBuilder builder, Direction direction, int slice, int i, int j, int w, int h, float light, int tile) {
+        int i0 = i;
+        int j0 = j;
+        int i1 = i + w;
+        int j1 = j + h;
+
+        switch (direction) {
+            case DOWN -> {
+                int y = slice;
+                builder.packedTerrain(i0, y, j0, 0, 0, tile, light);
+                builder.packedTerrain(i1, y, j0, w, 0, tile, light);
+                builder.packedTerrain(i1, y, j1, w, h, tile, light);
+                builder.packedTerrain(i0, y, j1, 0, h, tile, light);
+            }
+            case UP -> {
+                int y = slice + 1;
+                builder.packedTerrain(i0, y, j0, 0, 0, tile, light);
+                builder.packedTerrain(i0, y, j1, 0, h, tile, light);
+                builder.packedTerrain(i1, y, j1, w, h, tile, light);
+                builder.packedTerrain(i1, y, j0, w, 0, tile, light);
+            }
+            case NORTH -> {
+                int z = slice;
+                builder.packedTerrain(i0, j0, z, w, h, tile, light);
+                builder.packedTerrain(i0, j1, z, w, 0, tile, light);
+                builder.packedTerrain(i1, j1, z, 0, 0, tile, light);
+                builder.packedTerrain(i1, j0, z, 0, h, tile, light);
+            }
+            case SOUTH -> {
+                int z = slice + 1;
+                builder.packedTerrain(i0, j0, z, 0, h, tile, light);
+                builder.packedTerrain(i1, j0, z, w, h, tile, light);
+                builder.packedTerrain(i1, j1, z, w, 0, tile, light);
+                builder.packedTerrain(i0, j1, z, 0, 0, tile, light);
+            }
+            case WEST -> {
+                int x = slice;
+                builder.packedTerrain(x, j0, i0, 0, h, tile, light);
+                builder.packedTerrain(x, j0, i1, w, h, tile, light);
+                builder.packedTerrain(x, j1, i1, w, 0, tile, light);
+                builder.packedTerrain(x, j1, i0, 0, 0, tile, light);
+            }
+            case EAST -> {
+                int x = slice + 1;
+                builder.packedTerrain(x, j0, i0, w, h, tile, light);
+                builder.packedTerrain(x, j1, i0, w, 0, tile, light);
+                builder.packedTerrain(x, j1, i1, 0, 0, tile, light);
+                builder.packedTerrain(x, j0, i1, 0, h, tile, light);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package me.kalmemarq.render;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
@@ -13,8 +14,11 @@ import org.lwjgl.opengl.GL45;
 import org.lwjgl.stb.STBIWriteCallback;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.stb.STBImageWrite;
+import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
+import me.kalmemarq.util.IOUtils;
+
 public abstract class NativeImage implements Closeable {
     protected long pointer;
 
@@ -34,6 +38,39 @@ public abstract class NativeImage implements Closeable {
         return image;
     }
 
+    // Decodes to RGBA without touching GL, so it can run on any thread; null when the file is missing or unreadable
+    public static NativeImage read(Path path) {
+        ByteBuffer data = IOUtils.readFileToByteBuffer(path);
+        if (data == null) {
+            return null;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer wP = stack.mallocInt(1);
+            IntBuffer hP = stack.mallocInt(1);
+            IntBuffer cP = stack.mallocInt(1);
+            ByteBuffer pixels = STBImage.stbi_load_from_memory(data, wP, hP, cP, 4);
+            if (pixels == null) {
+                return null;
+            }
+            return new StbNativeImage(wP.get(0), hP.get(0), PixelFormat.RGBA, MemoryUtil.memAddress(pixels));
+        } finally {
+            MemoryUtil.memFree(data);
+        }
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public ByteBuffer getPixels() {
+        return MemoryUtil.memByteBuffer(this.pointer, this.width * this.height * this.pixelFormat.channelCount);
+    }
+
     public void flip(Mirroring mirroring) {
         long lineWidth =  (long) this.width * this.pixelFormat.channelCount;
  
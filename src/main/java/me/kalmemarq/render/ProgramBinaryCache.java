@@ -0,0 +1,150 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.util.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Linked programs saved with glGetProgramBinary under .cache/shaders, named by a SHA-256 of the processed sources and
+// the driver, so an edited shader or a driver update misses the cache instead of loading a stale binary. A binary the
+// driver refuses is deleted and the program compiled from source again.
+public class ProgramBinaryCache {
+    private static final Logger LOGGER = LogManager.getLogger("Shaders");
+    private static final Path DIRECTORY = Path.of(".cache", "shaders");
+    private static final int MAGIC = 0x52445342;
+    private static ProgramBinaryCache instance;
+
+    private final String driver;
+    private final boolean enabled;
+    private int hits;
+    private int misses;
+
+    private ProgramBinaryCache() {
+        this.driver = GL11.glGetString(GL11.GL_VENDOR) + "|" + GL11.glGetString(GL11.GL_RENDERER) + "|" + GL11.glGetString(GL11.GL_VERSION);
+        boolean enabled = Boolean.parseBoolean(System.getProperty("whatDoesMcMean.shaderCache", "true"));
+        if (enabled && GL11.glGetInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) == 0) {
+            LOGGER.info("Driver supports no program binary formats, shaders are always compiled");
+            enabled = false;
+        }
+        this.enabled = enabled && IOUtils.ensureDirectory(DIRECTORY);
+    }
+
+    // Created on first use, which has to be on the context thread
+    public static ProgramBinaryCache getInstance() {
+        if (instance == null) {
+            instance = new ProgramBinaryCache();
+        }
+        return instance;
+    }
+
+    public String getKey(Shader.Sources sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(this.driver.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(sources.vertex().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(sources.fragment().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // A linked program, or 0 when there is no usable binary for this key
+    public int load(String key) {
+        if (!this.enabled) return 0;
+        Path path = DIRECTORY.resolve(key + ".bin");
+        if (!Files.exists(path)) {
+            ++this.misses;
+            return 0;
+        }
+
+        ByteBuffer binary = null;
+        try {
+            byte[] data = Files.readAllBytes(path);
+            ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.length > 8 && header.getInt(0) == MAGIC) {
+                binary = MemoryUtil.memAlloc(data.length - 8);
+                binary.put(data, 8, data.length - 8).flip();
+                int program = GL20.glCreateProgram();
+                GL41.glProgramBinary(program, header.getInt(4), binary);
+                if (GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) != 0) {
+                    ++this.hits;
+                    return program;
+                }
+                GL20.glDeleteProgram(program);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read {}", path, e);
+        } finally {
+            if (binary != null) {
+                MemoryUtil.memFree(binary);
+            }
+        }
+
+        LOGGER.info("Discarding unusable program binary {}", path);
+        ++this.misses;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+        return 0;
+    }
+
+    // Called before linking, some drivers only keep a retrievable binary when asked up front
+    public void prepare(int program) {
+        if (this.enabled) {
+            GL41.glProgramParameteri(program, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+        }
+    }
+
+    public void store(String key, int program) {
+        if (!this.enabled || GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) == 0) return;
+        int length = GL20.glGetProgrami(program, GL41.GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+
+        ByteBuffer binary = MemoryUtil.memAlloc(length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer lengthP = stack.mallocInt(1);
+            IntBuffer formatP = stack.mallocInt(1);
+            GL41.glGetProgramBinary(program, lengthP, formatP, binary);
+            byte[] data = new byte[8 + lengthP.get(0)];
+            ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(formatP.get(0));
+            binary.get(0, data, 8, lengthP.get(0));
+
+            Path path = DIRECTORY.resolve(key + ".bin");
+            Path tempPath = DIRECTORY.resolve(key + ".tmp");
+            Files.write(tempPath, data);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to cache program binary {}", key, e);
+        } finally {
+            MemoryUtil.memFree(binary);
+        }
+    }
+
+    public int getHits() {
+        return this.hits;
+    }
+
+    public int getMisses() {
+        return this.misses;
+    }
+}
@@ -33,31 +33,22 @@ public class Shader implements Closeable {
     private FloatBuffer matrixBuffer;
 
     public Shader(String name) {
-        LOGGER.debug("Loading \"{}\" shader", name);
-        ObjectNode node;
-        try {
-            node = IOUtils.OBJECT_MAPPER.readValue(Files.readString(IOUtils.getResourcesPath().resolve("shaders/" + name + ".json")), ObjectNode.class);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load shader config", e);
-        }
-
-       Defines defines = readDefines(node);
-
-        this.id = GL30.glCreateProgram();
-        this.uniformLocations = new Object2IntOpenHashMap<>();
-
-        JsonNode sourcesNode = node.get("sources");
-        int vertex = createShaderStage(GL30.GL_VERTEX_SHADER, sourcesNode.get("vertex").asText(), defines);
-        int fragment = createShaderStage(GL30.GL_FRAGMENT_SHADER, sourcesNode.get("fragment").asText(), defines);
-
-        GL30.glAttachShader(this.id, vertex);
-        GL30.glAttachShader(this.id, fragment);
-
-        GL30.glLinkProgram(this.id);
+        this(readSources(name));
+    }
 
-        if (GL30.glGetProgrami(this.id, GL30.GL_LINK_STATUS) == 0) {
-            System.out.println(GL30.glGetProgramInfoLog(this.id));
+    // Only links, or loads a cached binary; the sources are read beforehand so that part can run on another thread
+    public Shader(Sources sources) {
+        ProgramBinaryCache cache = ProgramBinaryCache.getInstance();
+        String key = cache.getKey(sources);
+        int program = cache.load(key);
+        if (program != 0) {
+            LOGGER.debug("Loaded \"{}\" from the program binary cache", sources.name());
+        } else {
+            program = link(sources, cache);
+            cache.store(key, program);
         }
+        this.id = program;
+        this.uniformLocations = new Object2IntOpenHashMap<>();
 
         int uniformCount = GL45.glGetProgramInterfacei(this.id, GL45.GL_UNIFORM, GL45.GL_ACTIVE_RESOURCES);
         try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -75,21 +66,60 @@ public class Shader implements Closeable {
                 this.uniformLocations.put(uniformName, location);
             } 
         }
+    }
+
+    private static int link(Sources sources, ProgramBinaryCache cache) {
+        int program = GL30.glCreateProgram();
+        cache.prepare(program);
+
+        int vertex = createShaderStage(GL30.GL_VERTEX_SHADER, sources.vertex());
+        int fragment = createShaderStage(GL30.GL_FRAGMENT_SHADER, sources.fragment());
+
+        GL30.glAttachShader(program, vertex);
+        GL30.glAttachShader(program, fragment);
+
+        GL30.glLinkProgram(program);
 
-        GL30.glDetachShader(this.id, vertex);
-        GL30.glDetachShader(this.id, fragment);
+        if (GL30.glGetProgrami(program, GL30.GL_LINK_STATUS) == 0) {
+            System.out.println(GL30.glGetProgramInfoLog(program));
+        }
+
+        GL30.glDetachShader(program, vertex);
+        GL30.glDetachShader(program, fragment);
         GL30.glDeleteShader(vertex);
         GL30.glDeleteShader(fragment);
+        return program;
     }
 
-    private static int createShaderStage(int type, String sourceFile, Defines defines) {
-        int shader = GL30.glCreateShader(type);
+    // Reads the config and both stages with their defines and includes applied, without touching GL
+    public static Sources readSources(String name) {
+        Config config = readConfig(name);
+        return new Sources(name, processSource(config.defines(), config.vertex()), processSource(config.defines(), config.fragment()));
+    }
+
+    // Reads the config and the raw stage sources, before any defines or includes are applied
+    static Config readConfig(String name) {
+        LOGGER.debug("Loading \"{}\" shader", name);
+        ObjectNode node;
+        try {
+            node = IOUtils.OBJECT_MAPPER.readValue(Files.readString(IOUtils.getResourcesPath().resolve("shaders/" + name + ".json")), ObjectNode.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load shader config", e);
+        }
 
+        JsonNode sourcesNode = node.get("sources");
         try {
-            GL30.glShaderSource(shader, processSource(defines, Files.readString(IOUtils.getResourcesPath().resolve("shaders/" + sourceFile))));
+            String vertex = Files.readString(IOUtils.getResourcesPath().resolve("shaders/" + sourcesNode.get("vertex").asText()));
+            String fragment = Files.readString(IOUtils.getResourcesPath().resolve("shaders/" + sourcesNode.get("fragment").asText()));
+            return new Config(node, readDefines(node), vertex, fragment);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    private static int createShaderStage(int type, String source) {
+        int shader = GL30.glCreateShader(type);
+        GL30.glShaderSource(shader, source);
 
         GL30.glCompileShader(shader);
         if (GL30.glGetShaderi(shader, GL30.GL_COMPILE_STATUS) == 0) {
@@ -178,7 +208,7 @@ public class Shader implements Closeable {
 
     private static final Pattern INCLUDE_PATTERN = Pattern.compile("^#include\\s+[\\\"<](?<includepath>[a-zA-Z.]+)[\\\">]", Pattern.MULTILINE);
 
-    private static String processSource(Defines defines, String source) {
+    static String processSource(Defines defines, String source) {
         StringBuilder builder = new StringBuilder();
         builder.append(source, 0, source.indexOf("\n", source.indexOf("#version")) + 1);
 
@@ -206,6 +236,12 @@ public class Shader implements Closeable {
         return processedSource.toString();
     }
 
+    public record Sources(String name, String vertex, String fragment) {
+    }
+
+    record Config(ObjectNode node, Defines defines, String vertex, String fragment) {
+    }
+
     public static class Defines {
         public final Map<String, String> values;
         public final Set<String> flags;
@@ -0,0 +1,90 @@
+package me.kalmemarq.render;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// One shader config compiled with any combination of the optional flags listed under "variants". A combination is
+// compiled the first time it is asked for and kept until close; it goes through the program binary cache like any
+// other shader.
+public class ShaderVariants implements Closeable {
+    private final String name;
+    private final Shader.Defines defines;
+    private final Set<String> variantFlags;
+    private final String vertexSource;
+    private final String fragmentSource;
+    private final Map<String, Shader> shaders = new HashMap<>();
+
+    private ShaderVariants(String name, Shader.Defines defines, Set<String> variantFlags, String vertexSource, String fragmentSource) {
+        this.name = name;
+        this.defines = defines;
+        this.variantFlags = variantFlags;
+        this.vertexSource = vertexSource;
+        this.fragmentSource = fragmentSource;
+    }
+
+    // Reads the config and the raw stage sources without touching GL
+    public static ShaderVariants read(String name) {
+        Shader.Config config = Shader.readConfig(name);
+        Set<String> variantFlags = new HashSet<>();
+        if (config.node().has("variants")) {
+            for (JsonNode item : config.node().get("variants")) {
+                variantFlags.add(item.asText());
+            }
+        }
+        return new ShaderVariants(name, config.defines(), variantFlags, config.vertex(), config.fragment());
+    }
+
+    // Context thread only. No flags is the plain shader.
+    public Shader get(String... flags) {
+        String key;
+        if (flags.length == 0) {
+            key = "";
+        } else if (flags.length == 1) {
+            key = flags[0];
+        } else {
+            String[] sorted = flags.clone();
+            Arrays.sort(sorted);
+            key = String.join(",", sorted);
+        }
+
+        Shader shader = this.shaders.get(key);
+        if (shader == null) {
+            shader = this.compile(key, flags);
+            this.shaders.put(key, shader);
+        }
+        return shader;
+    }
+
+    private Shader compile(String key, String[] flags) {
+        Shader.Defines defines = new Shader.Defines();
+        defines.values.putAll(this.defines.values);
+        defines.flags.addAll(this.defines.flags);
+        for (String flag : flags) {
+            if (!this.variantFlags.contains(flag)) {
+                throw new IllegalArgumentException("Shader " + this.name + " has no variant flag " + flag);
+            }
+            defines.flags.add(flag);
+        }
+
+        String variantName = key.isEmpty() ? this.name : this.name + "[" + key + "]";
+        return new Shader(new Shader.Sources(variantName, Shader.processSource(defines, this.vertexSource), Shader.processSource(defines, this.fragmentSource)));
+    }
+
+    public int getCompiledCount() {
+        return this.shaders.size();
+    }
+
+    @Override
+    public void close() {
+        for (Shader shader : this.shaders.values()) {
+            shader.close();
+        }
+        this.shaders.clear();
+    }
+}
@@ -0,0 +1,166 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.render.vertex.QuadIndexBuffer;
+import me.kalmemarq.render.vertex.VertexLayout;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+// All chunk meshes live in one vertex buffer, each layer is drawn with a single glMultiDrawElementsIndirect.
+// The chunk offset is an instanced attribute fetched through each command's baseInstance.
+public class TerrainArena implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("TerrainArena");
+    private static final int COMMAND_SIZE = 20;
+    private static final int CHUNK_OFFSET_SIZE = 12;
+
+    private final int stride = VertexLayout.TERRAIN.stride;
+    private final ArenaAllocator allocator;
+    private final int vao;
+    private int vertexBuffer;
+    private final int commandBuffer;
+    private final int chunkOffsetBuffer;
+    private ByteBuffer commands;
+    private ByteBuffer chunkOffsets;
+    private int drawCount;
+    private final int[] firstDraws = new int[ChunkBuilder.LAYER_COUNT];
+    private final int[] layerDrawCounts = new int[ChunkBuilder.LAYER_COUNT];
+    private int currentLayer = -1;
+
+    public TerrainArena(int initialVertexCapacity) {
+        this.allocator = new ArenaAllocator(initialVertexCapacity);
+        this.vao = GL45.glCreateVertexArrays();
+        this.vertexBuffer = this.createVertexBuffer(initialVertexCapacity);
+        this.commandBuffer = GL45.glCreateBuffers();
+        this.chunkOffsetBuffer = GL45.glCreateBuffers();
+        this.commands = MemoryUtil.memAlloc(COMMAND_SIZE * 256);
+        this.chunkOffsets = MemoryUtil.memAlloc(CHUNK_OFFSET_SIZE * 256);
+
+        GL45.glVertexArrayVertexBuffer(this.vao, 0, this.vertexBuffer, 0, this.stride);
+        GL45.glEnableVertexArrayAttrib(this.vao, 0);
+        GL45.glVertexArrayAttribIFormat(this.vao, 0, 2, GL30.GL_UNSIGNED_INT, 0);
+        GL45.glVertexArrayAttribBinding(this.vao, 0, 0);
+
+        GL45.glVertexArrayVertexBuffer(this.vao, 1, this.chunkOffsetBuffer, 0, CHUNK_OFFSET_SIZE);
+        GL45.glEnableVertexArrayAttrib(this.vao, 1);
+        GL45.glVertexArrayAttribFormat(this.vao, 1, 3, GL30.GL_FLOAT, false, 0);
+        GL45.glVertexArrayAttribBinding(this.vao, 1, 1);
+        GL45.glVertexArrayBindingDivisor(this.vao, 1, 1);
+
+        GL45.glVertexArrayElementBuffer(this.vao, QuadIndexBuffer.getInstance().getId());
+    }
+
+    private int createVertexBuffer(int vertexCapacity) {
+        int buffer = GL45.glCreateBuffers();
+        GL45.glNamedBufferStorage(buffer, (long) vertexCapacity * this.stride, GL45.GL_DYNAMIC_STORAGE_BIT);
+        return buffer;
+    }
+
+    public ArenaAllocator.Allocation upload(ArenaAllocator.Allocation previous, ByteBuffer data, int vertexCount) {
+        if (previous != null) {
+            this.allocator.free(previous);
+        }
+
+        ArenaAllocator.Allocation allocation = this.allocator.allocate(vertexCount);
+        if (allocation == null) {
+            this.reallocate(vertexCount);
+            allocation = this.allocator.allocate(vertexCount);
+        }
+
+        GL45.glNamedBufferSubData(this.vertexBuffer, (long) allocation.getOffset() * this.stride, data);
+        QuadIndexBuffer.getInstance().ensureCapacity(vertexCount);
+        return allocation;
+    }
+
+    public void free(ArenaAllocator.Allocation allocation) {
+        this.allocator.free(allocation);
+    }
+
+    // Copies every live mesh into a new buffer packed from offset 0, doubling the capacity when compaction alone
+    // would leave less than a quarter of it free
+    private void reallocate(int neededVertices) {
+        int oldCapacity = this.allocator.getCapacity();
+        float fragmentation = this.allocator.getFragmentation();
+        int newCapacity = oldCapacity;
+        while (newCapacity - this.allocator.getUsed() < neededVertices + newCapacity / 4) {
+            newCapacity *= 2;
+        }
+
+        int oldBuffer = this.vertexBuffer;
+        int newBuffer = this.createVertexBuffer(newCapacity);
+        this.allocator.grow(newCapacity);
+        this.allocator.compact((fromOffset, toOffset, size) -> GL45.glCopyNamedBufferSubData(oldBuffer, newBuffer, (long) fromOffset * this.stride, (long) toOffset * this.stride, (long) size * this.stride));
+
+        this.vertexBuffer = newBuffer;
+        GL45.glVertexArrayVertexBuffer(this.vao, 0, this.vertexBuffer, 0, this.stride);
+        GL30.glDeleteBuffers(oldBuffer);
+        LOGGER.info("Compacted terrain arena from {} to {} vertices ({} live, fragmentation was {}%)", oldCapacity, newCapacity, this.allocator.getUsed(), Math.round(fragmentation * 100.0f));
+    }
+
+    public void beginDraws() {
+        this.drawCount = 0;
+        this.currentLayer = -1;
+        this.commands.clear();
+        this.chunkOffsets.clear();
+    }
+
+    public void beginLayer(int layer) {
+        this.currentLayer = layer;
+        this.firstDraws[layer] = this.drawCount;
+        this.layerDrawCounts[layer] = 0;
+    }
+
+    public void addDraw(ArenaAllocator.Allocation allocation, int vertexCount, float offsetX, float offsetY, float offsetZ) {
+        if (this.commands.remaining() < COMMAND_SIZE) {
+            this.commands = MemoryUtil.memRealloc(this.commands, this.commands.capacity() * 2);
+            this.chunkOffsets = MemoryUtil.memRealloc(this.chunkOffsets, this.chunkOffsets.capacity() * 2);
+        }
+
+        this.commands.putInt(DrawMode.QUADS.getIndexCount(vertexCount));
+        this.commands.putInt(1);
+        this.commands.putInt(0);
+        this.commands.putInt(allocation.getOffset());
+        this.commands.putInt(this.drawCount);
+        this.chunkOffsets.putFloat(offsetX).putFloat(offsetY).putFloat(offsetZ);
+        ++this.drawCount;
+        ++this.layerDrawCounts[this.currentLayer];
+    }
+
+    public void endDraws() {
+        this.commands.flip();
+        this.chunkOffsets.flip();
+        GL45.glNamedBufferData(this.commandBuffer, this.commands, GL30.GL_STREAM_DRAW);
+        GL45.glNamedBufferData(this.chunkOffsetBuffer, this.chunkOffsets, GL30.GL_STREAM_DRAW);
+    }
+
+    public void draw(int layer) {
+        if (this.layerDrawCounts[layer] == 0) return;
+        GL30.glBindVertexArray(this.vao);
+        GL30.glBindBuffer(GL43.GL_DRAW_INDIRECT_BUFFER, this.commandBuffer);
+        GL43.glMultiDrawElementsIndirect(GL30.GL_TRIANGLES, QuadIndexBuffer.getInstance().getIndexType(), (long) this.firstDraws[layer] * COMMAND_SIZE, this.layerDrawCounts[layer], COMMAND_SIZE);
+        GL30.glBindBuffer(GL43.GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    public int getDrawCount(int layer) {
+        return this.layerDrawCounts[layer];
+    }
+
+    public ArenaAllocator getAllocator() {
+        return this.allocator;
+    }
+
+    @Override
+    public void close() {
+        GL30.glDeleteVertexArrays(this.vao);
+        GL30.glDeleteBuffers(this.vertexBuffer);
+        GL30.glDeleteBuffers(this.commandBuffer);
+        GL30.glDeleteBuffers(this.chunkOffsetBuffer);
+        MemoryUtil.memFree(this.commands);
+        MemoryUtil.memFree(this.chunkOffsets);
+    }
+}
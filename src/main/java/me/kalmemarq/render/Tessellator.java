@@ -1,27 +1,34 @@
 package me.kalmemarq.render;
 
 import me.kalmemarq.render.vertex.BufferBuilder;
-import me.kalmemarq.render.vertex.VertexBuffer;
+import me.kalmemarq.render.vertex.QuadIndexBuffer;
+import me.kalmemarq.render.vertex.StreamingVertexBuffer;
 import me.kalmemarq.render.vertex.VertexLayout;
-import org.lwjgl.system.MemoryUtil;
+import me.kalmemarq.util.Profiler;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
 
 import java.io.Closeable;
-import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+// Vertices are built directly in a persistently mapped ring, each draw only reserves, fills and fences a range of it
 public class Tessellator implements Closeable {
+    private static final int RING_SEGMENTS = 4;
     public static Tessellator instance;
-    private final ByteBuffer buffer;
+    private final int capacity;
+    private final StreamingVertexBuffer ring;
     private final BufferBuilder bufferBuilder;
-    private final Map<VertexLayout, VertexBuffer> vertexBuffers;
+    private final Map<VertexLayout, Integer> vertexArrays;
     private DrawMode mode;
     private VertexLayout layout;
+    private int start;
 
     public Tessellator(int capacity) {
-        this.buffer = MemoryUtil.memAlloc(capacity);
-        this.vertexBuffers = new HashMap<>();
-        this.bufferBuilder = new BufferBuilder(MemoryUtil.memAddress(this.buffer));
+        this.capacity = capacity;
+        this.ring = new StreamingVertexBuffer(capacity * RING_SEGMENTS);
+        this.vertexArrays = new HashMap<>();
+        this.bufferBuilder = new BufferBuilder(this.ring.getAddress());
     }
 
     public static Tessellator getInstance() {
@@ -34,30 +41,57 @@ public class Tessellator implements Closeable {
     public static void cleanup() {
         if (instance != null) {
             instance.close();
+            instance = null;
         }
     }
 
     public void begin(DrawMode mode, VertexLayout vertexLayout) {
         this.mode = mode;
         this.layout = vertexLayout;
-        this.bufferBuilder.begin();
+        this.start = this.ring.reserve(vertexLayout.stride, this.capacity);
+        this.bufferBuilder.begin(this.ring.getAddress() + this.start);
     }
 
     public BufferBuilder getBufferBuilder() {
         return this.bufferBuilder;
     }
 
+    public StreamingVertexBuffer getRing() {
+        return this.ring;
+    }
+
     public void draw() {
         int vertexCount = this.bufferBuilder.end();
-        VertexBuffer vertexBuffer = this.vertexBuffers.computeIfAbsent(this.layout, (key) -> new VertexBuffer());
-        vertexBuffer.bind();
-        vertexBuffer.upload(this.mode, this.layout, MemoryUtil.memSlice(this.buffer, 0, vertexCount * this.layout.stride), vertexCount);
-        vertexBuffer.draw();
+        if (vertexCount == 0) return;
+
+        Profiler profiler = Profiler.get();
+        profiler.push("tessellator");
+        GL30.glBindVertexArray(this.vertexArrays.computeIfAbsent(this.layout, this::createVertexArray));
+        int baseVertex = this.start / this.layout.stride;
+        if (this.mode == DrawMode.QUADS) {
+            QuadIndexBuffer quadIndexBuffer = QuadIndexBuffer.getInstance();
+            quadIndexBuffer.ensureCapacity(vertexCount);
+            GL32.glDrawElementsBaseVertex(this.mode.glEnum, this.mode.getIndexCount(vertexCount), quadIndexBuffer.getIndexType(), 0L, baseVertex);
+        } else {
+            GL30.glDrawArrays(this.mode.glEnum, baseVertex, vertexCount);
+        }
+        this.ring.commit(this.start, vertexCount * this.layout.stride);
+        profiler.pop();
+    }
+
+    // The ring never moves, so each layout gets one vertex array that reads it from offset 0
+    private int createVertexArray(VertexLayout layout) {
+        int vao = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(vao);
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, this.ring.getId());
+        layout.enable();
+        GL30.glBindBuffer(GL30.GL_ELEMENT_ARRAY_BUFFER, QuadIndexBuffer.getInstance().getId());
+        return vao;
     }
 
     @Override
     public void close() {
-        MemoryUtil.memFree(this.buffer);
-        this.vertexBuffers.values().forEach(VertexBuffer::close);
+        this.vertexArrays.values().forEach(GL30::glDeleteVertexArrays);
+        this.ring.close();
     }
 }
@@ -1,18 +1,11 @@
 package me.kalmemarq.render;
 
-import me.kalmemarq.util.IOUtils;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.opengl.GL45;
-import org.lwjgl.stb.STBImage;
-import org.lwjgl.system.MemoryStack;
-import org.lwjgl.system.MemoryUtil;
 
 import java.io.Closeable;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.nio.file.Path;
 
 public class Texture implements Closeable {
@@ -25,35 +18,29 @@ public class Texture implements Closeable {
 
     public void load(Path path) {
         LOGGER.debug("Loading \"{}\"", path);
-        ByteBuffer pixelsBuffer = IOUtils.readFileToByteBuffer(path);
+        NativeImage image = NativeImage.read(path);
+        try {
+            this.upload(image);
+        } finally {
+            if (image != null) {
+                image.close();
+            }
+        }
+    }
 
+    // The GL half of load, for images decoded elsewhere. A null image leaves the texture without storage.
+    public void upload(NativeImage image) {
         GL45.glTextureParameteri(this.id, GL30.GL_TEXTURE_MIN_FILTER, GL30.GL_NEAREST);
         GL45.glTextureParameteri(this.id, GL30.GL_TEXTURE_MAG_FILTER, GL30.GL_NEAREST);
         GL45.glTextureParameteri(this.id, GL30.GL_TEXTURE_WRAP_S, GL30.GL_REPEAT);
         GL45.glTextureParameteri(this.id, GL30.GL_TEXTURE_WRAP_T, GL30.GL_REPEAT);
 
-        if (pixelsBuffer == null) {
+        if (image == null) {
             return;
         }
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer wP = stack.mallocInt(1);
-            IntBuffer hP = stack.mallocInt(1);
-            IntBuffer cP = stack.mallocInt(1);
-
-            ByteBuffer imageData = STBImage.stbi_load_from_memory(pixelsBuffer, wP, hP, cP, 4);
-            if (imageData != null) {
-                int width = wP.get(0);
-                int height = hP.get(0);
-
-                GL45.glTextureStorage2D(this.id, 1, GL30.GL_RGBA8, width, height);
-                GL45.glTextureSubImage2D(this.id, 0, 0, 0, width, height, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, imageData);
-
-                STBImage.stbi_image_free(imageData);
-            }
-        } finally {
-            MemoryUtil.memFree(pixelsBuffer);
-        }
+        GL45.glTextureStorage2D(this.id, 1, GL30.GL_RGBA8, image.getWidth(), image.getHeight());
+        GL45.glTextureSubImage2D(this.id, 0, 0, 0, image.getWidth(), image.getHeight(), GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, image.getPixels());
     }
 
     public int getId() {
@@ -7,7 +7,6 @@ import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWImage;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
-import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.Configuration;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
@@ -15,8 +14,6 @@ import org.lwjgl.system.MemoryUtil;
 import me.kalmemarq.util.IOUtils;
 
 import java.io.Closeable;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,6 +21,7 @@ import java.util.List;
 import java.util.Objects;
 
 public class Window implements Closeable {
+    public static final String[] ICONS = {"x16.png", "x32.png", "x48.png", "x64.png", "x128.png", "x256.png"};
     private final long handle;
     private int width;
     private int height;
@@ -42,14 +40,17 @@ public class Window implements Closeable {
     private ImGuiLayer imGuiLayer;
     private List<EventHandler> eventHandlers;
 
-    public Window(int width, int height, String title) {
+    // Has to run before anything else uses LWJGL, including images decoded on other threads during startup
+    public static void configure() {
         if (System.getProperty("whatDoesMcMean.lwjgl.debug") != null) {
             Configuration.DEBUG.set(false);
             Configuration.DEBUG_LOADER.set(true);
             Configuration.DEBUG_MEMORY_ALLOCATOR.set(true);
             Configuration.DEBUG_STACK.set(true);
         }
+    }
 
+    public Window(int width, int height, String title) {
         this.eventHandlers = new ArrayList<>();
 
         GLFWErrorCallback.createPrint(System.err).set();
@@ -177,29 +178,29 @@ public class Window implements Closeable {
         GLFW.glfwSetInputMode(this.handle, GLFW.GLFW_CURSOR, GLFW.GLFW_CURSOR_DISABLED);
     }
 
-     public void setIcon() {
-        String[] icons = {"x16.png", "x32.png", "x48.png", "x64.png", "x128.png", "x256.png"};
+    public static NativeImage readIcon(String name) {
+        return NativeImage.read(IOUtils.getResourcesPath().resolve("icons/" + name));
+    }
+
+    // Icons that failed to decode are null and skipped, the images are closed afterwards
+    public void setIcon(List<NativeImage> icons) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer wP = stack.mallocInt(1);
-            IntBuffer hP = stack.mallocInt(1);
-            IntBuffer cP = stack.mallocInt(1);
-            List<ByteBuffer> imageBuffers = new ArrayList<>();
-            GLFWImage.Buffer iconsBuffer = GLFWImage.malloc(icons.length, stack);
-            for (int i = 0; i < icons.length; ++i) {
-                ByteBuffer iconData = IOUtils.readFileToByteBuffer(IOUtils.getResourcesPath().resolve("icons/" + icons[i]));
-                ByteBuffer iconPixels = STBImage.stbi_load_from_memory(iconData, wP, hP, cP, 4);
-                if (iconPixels != null) {
-                    iconsBuffer.position(i);
-                    iconsBuffer.width(wP.get(0));
-                    iconsBuffer.height(hP.get(0));
-                    iconsBuffer.pixels(iconPixels);
-                    imageBuffers.add(iconPixels);
-                }
-                MemoryUtil.memFree(iconData);
+            GLFWImage.Buffer iconsBuffer = GLFWImage.malloc(icons.size(), stack);
+            int count = 0;
+            for (NativeImage icon : icons) {
+                if (icon == null) continue;
+                iconsBuffer.position(count++);
+                iconsBuffer.width(icon.getWidth());
+                iconsBuffer.height(icon.getHeight());
+                iconsBuffer.pixels(icon.getPixels());
             }
             iconsBuffer.position(0);
+            iconsBuffer.limit(count);
             GLFW.glfwSetWindowIcon(this.handle, iconsBuffer);
-            imageBuffers.forEach(STBImage::stbi_image_free);
+        } finally {
+            for (NativeImage icon : icons) {
+                if (icon != null) icon.close();
+            }
         }
     }
 
@@ -1,156 +1,341 @@
 package me.kalmemarq.render;
 
-import me.kalmemarq.Block;
-import me.kalmemarq.render.vertex.BufferBuilder;
-import me.kalmemarq.render.vertex.VertexBuffer;
-import me.kalmemarq.render.vertex.VertexLayout;
 import me.kalmemarq.util.Box;
+import me.kalmemarq.util.Direction;
+import me.kalmemarq.util.Profiler;
 import me.kalmemarq.World;
-import org.lwjgl.system.MemoryUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.Closeable;
-import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
 
 public class WorldRenderer implements Closeable, World.WorldStateListener {
+    private static final Logger LOGGER = LogManager.getLogger("WorldRenderer");
+    private static final Direction[] DIRECTIONS = Direction.values();
     public static int chunksRendererPerFrame = 0;
-    public static int currentChunksRendererPerFrame = 0;
+    public static int chunksCulledPerFrame = 0;
 
+    private final World world;
     private final Chunk[] chunks;
     private final int xChunks;
     private final int yChunks;
     private final int zChunks;
+    private final ChunkBuilder chunkBuilder;
+    private final ChunkRebuildScheduler rebuildScheduler;
+    private final TerrainArena arena;
+    private boolean greedyMeshing;
+    private final Chunk[] visibleChunks;
+    private int visibleChunkCount;
+    private final int[] traversalQueue;
+    private final byte[] traversalEntryFaces;
+    private final byte[] traversalDirections;
+    private final int[] traversalFrames;
+    private int frame;
+    // Filled by the simulation thread and drained on the render thread in update, in that order
+    private final ConcurrentLinkedQueue<Chunk> modifiedChunks = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Chunk> prioritizedChunks = new ConcurrentLinkedQueue<>();
 
     public WorldRenderer(World world) {
+        this.world = world;
         this.xChunks = world.width / World.CHUNK_SIZE;
         this.yChunks = world.depth / World.CHUNK_SIZE;
         this.zChunks = world.height / World.CHUNK_SIZE;
         this.chunks = new Chunk[this.xChunks * this.yChunks * this.zChunks];
+        this.chunkBuilder = new ChunkBuilder(ChunkBuilder.getDefaultThreadCount());
+        this.rebuildScheduler = new ChunkRebuildScheduler(this.chunkBuilder.getThreadCount() * 2);
+        this.arena = new TerrainArena(1 << 20);
+        this.visibleChunks = new Chunk[this.chunks.length];
+        this.traversalQueue = new int[this.chunks.length];
+        this.traversalEntryFaces = new byte[this.chunks.length];
+        this.traversalDirections = new byte[this.chunks.length];
+        this.traversalFrames = new int[this.chunks.length];
 
         for (int x = 0; x < this.xChunks; x++) {
             for (int y = 0; y < this.yChunks; y++) {
                 for (int z = 0; z < this.zChunks; z++) {
-                    this.chunks[(x + y * this.xChunks) * this.zChunks + z] = new Chunk(world, x, y, z);
+                    this.chunks[(x + y * this.xChunks) * this.zChunks + z] = new Chunk(world, this.arena, x, y, z);
                 }
             }
         }
+
+        for (Chunk chunk : this.chunks) {
+            this.rebuildScheduler.enqueue(chunk);
+        }
     }
 
     public int getChunkCount() {
         return this.chunks.length;
     }
 
+    public int getPendingBuildCount() {
+        return this.chunkBuilder.getPendingCount();
+    }
+
+    public int getRebuildQueueSize() {
+        return this.rebuildScheduler.size();
+    }
+
+    public long getOldestRebuildAgeMillis() {
+        return this.rebuildScheduler.getOldestAgeNanos() / 1_000_000L;
+    }
+
+    public boolean isGreedyMeshing() {
+        return this.greedyMeshing;
+    }
+
+    public void setGreedyMeshing(boolean greedyMeshing) {
+        if (this.greedyMeshing == greedyMeshing) return;
+        LOGGER.info("Switching to {} meshing, currently {} vertices", greedyMeshing ? "greedy" : "per-block", this.getVertexCount());
+        this.greedyMeshing = greedyMeshing;
+        for (Chunk chunk : this.chunks) {
+            chunk.markDirty();
+            this.rebuildScheduler.enqueue(chunk);
+        }
+    }
+
+    public long getVertexCount() {
+        long count = 0;
+        for (Chunk chunk : this.chunks) {
+            for (int layer = 0; layer < ChunkBuilder.LAYER_COUNT; ++layer) {
+                count += chunk.vertexCounts[layer];
+            }
+        }
+        return count;
+    }
+
+    public long getPerBlockVertexCount() {
+        long count = 0;
+        for (Chunk chunk : this.chunks) {
+            for (int layer = 0; layer < ChunkBuilder.LAYER_COUNT; ++layer) {
+                count += chunk.perBlockVertexCounts[layer];
+            }
+        }
+        return count;
+    }
+
     @Override
     public void onChunkModified(int chunkX, int chunkY, int chunkZ) {
         if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return;
-        this.chunks[(chunkX + chunkY * this.xChunks) * this.zChunks + chunkZ].markDirty();
+        this.modifiedChunks.add(this.chunks[this.getChunkIndex(chunkX, chunkY, chunkZ)]);
+    }
+
+    // Moves the chunks a player edit touched, including neighbours sharing the block's faces, to the front of the queue
+    public void prioritizeBlock(int x, int y, int z) {
+        this.prioritizeChunkAt(x, y, z);
+        for (Direction direction : Direction.values()) {
+            this.prioritizeChunkAt(x + direction.normalX, y + direction.normalY, z + direction.normalZ);
+        }
+    }
+
+    private void prioritizeChunkAt(int x, int y, int z) {
+        int chunkX = Math.floorDiv(x, World.CHUNK_SIZE);
+        int chunkY = Math.floorDiv(y, World.CHUNK_SIZE);
+        int chunkZ = Math.floorDiv(z, World.CHUNK_SIZE);
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return;
+        this.prioritizedChunks.add(this.chunks[this.getChunkIndex(chunkX, chunkY, chunkZ)]);
     }
 
-    public void render(Shader terrainShader, Frustum frustum, int layer) {
-        Chunk.rebuiltThisFrame = 0;
-        chunksRendererPerFrame = currentChunksRendererPerFrame;
-        currentChunksRendererPerFrame = 0;
+    public void update(Frustum frustum, double cameraX, double cameraY, double cameraZ) {
+        Profiler profiler = Profiler.get();
+        profiler.push("upload");
+        this.chunkBuilder.upload();
+        profiler.pop();
+        profiler.record("rebuild (workers)", this.chunkBuilder.takeBuildNanos(), this.chunkBuilder.takeBuildCount());
+
+        Chunk chunk;
+        while ((chunk = this.modifiedChunks.poll()) != null) {
+            chunk.markDirty();
+            this.rebuildScheduler.enqueue(chunk);
+        }
+        while ((chunk = this.prioritizedChunks.poll()) != null) {
+            this.rebuildScheduler.prioritize(chunk);
+        }
+
+        // Rebuilds copy the blocks and light they need here, so the simulation thread cannot change them halfway
+        profiler.push("schedule rebuilds");
+        Lock lock = this.world.getLock().readLock();
+        lock.lock();
+        try {
+            this.rebuildScheduler.process(this.chunkBuilder, frustum, cameraX, cameraY, cameraZ, this.greedyMeshing);
+        } finally {
+            lock.unlock();
+        }
+        profiler.pop();
+    }
 
+    // Breadth-first walk from the camera chunk that only crosses chunks whose open space connects the face
+    // it was entered through to the face it leaves through, and never turns back towards the camera
+    public void setupTerrain(Frustum frustum, double cameraX, double cameraY, double cameraZ) {
+        this.visibleChunkCount = 0;
+        int frustumVisible = 0;
         for (Chunk chunk : this.chunks) {
-            if (chunk != null && frustum.isVisible(chunk.box)) {
-                terrainShader.setUniform("uMeshOffset", (float) (chunk.x * World.CHUNK_SIZE), (float) (chunk.y * World.CHUNK_SIZE), (float) (chunk.z * World.CHUNK_SIZE));
-                chunk.render(layer);
-                if (layer == 0) currentChunksRendererPerFrame++;
+            if (frustum.isVisible(chunk.box)) ++frustumVisible;
+        }
+
+        int cameraChunkX = (int) Math.floor(cameraX / World.CHUNK_SIZE);
+        int cameraChunkY = (int) Math.floor(cameraY / World.CHUNK_SIZE);
+        int cameraChunkZ = (int) Math.floor(cameraZ / World.CHUNK_SIZE);
+        if (cameraChunkX < 0 || cameraChunkY < 0 || cameraChunkZ < 0 || cameraChunkX >= this.xChunks || cameraChunkY >= this.yChunks || cameraChunkZ >= this.zChunks) {
+            // Outside the world there is no start chunk, so fall back to frustum culling only
+            for (Chunk chunk : this.chunks) {
+                if (frustum.isVisible(chunk.box)) {
+                    this.visibleChunks[this.visibleChunkCount++] = chunk;
+                }
+            }
+        } else {
+            ++this.frame;
+            int head = 0;
+            int tail = 0;
+            int start = this.getChunkIndex(cameraChunkX, cameraChunkY, cameraChunkZ);
+            this.traversalQueue[tail++] = start;
+            this.traversalEntryFaces[start] = -1;
+            this.traversalDirections[start] = 0;
+            this.traversalFrames[start] = this.frame;
+
+            while (head < tail) {
+                int index = this.traversalQueue[head++];
+                Chunk chunk = this.chunks[index];
+                this.visibleChunks[this.visibleChunkCount++] = chunk;
+                int entryFace = this.traversalEntryFaces[index];
+                int directions = this.traversalDirections[index];
+
+                for (Direction direction : DIRECTIONS) {
+                    if ((directions & (1 << (direction.index ^ 1))) != 0) continue;
+                    if (entryFace != -1 && !ChunkOcclusionGraph.isVisibleThrough(chunk.visibility, entryFace, direction.index)) continue;
+
+                    int nx = chunk.x + direction.normalX;
+                    int ny = chunk.y + direction.normalY;
+                    int nz = chunk.z + direction.normalZ;
+                    if (nx < 0 || ny < 0 || nz < 0 || nx >= this.xChunks || ny >= this.yChunks || nz >= this.zChunks) continue;
+
+                    int neighborIndex = this.getChunkIndex(nx, ny, nz);
+                    if (this.traversalFrames[neighborIndex] == this.frame) continue;
+                    Chunk neighbor = this.chunks[neighborIndex];
+                    if (!frustum.isVisible(neighbor.box)) continue;
+
+                    this.traversalFrames[neighborIndex] = this.frame;
+                    this.traversalEntryFaces[neighborIndex] = (byte) (direction.index ^ 1);
+                    this.traversalDirections[neighborIndex] = (byte) (directions | (1 << direction.index));
+                    this.traversalQueue[tail++] = neighborIndex;
+                }
             }
         }
+
+        chunksRendererPerFrame = this.visibleChunkCount;
+        chunksCulledPerFrame = Math.max(0, frustumVisible - this.visibleChunkCount);
+
+        this.arena.beginDraws();
+        for (int layer = 0; layer < ChunkBuilder.LAYER_COUNT; ++layer) {
+            this.arena.beginLayer(layer);
+            for (int i = 0; i < this.visibleChunkCount; ++i) {
+                Chunk chunk = this.visibleChunks[i];
+                if (chunk.allocations[layer] != null) {
+                    this.arena.addDraw(chunk.allocations[layer], chunk.vertexCounts[layer], chunk.x * World.CHUNK_SIZE, chunk.y * World.CHUNK_SIZE, chunk.z * World.CHUNK_SIZE);
+                }
+            }
+        }
+        this.arena.endDraws();
+    }
+
+    public void render(int layer) {
+        Profiler profiler = Profiler.get();
+        profiler.push("draw terrain");
+        this.arena.draw(layer);
+        profiler.pop();
+    }
+
+    public ArenaAllocator getArenaAllocator() {
+        return this.arena.getAllocator();
+    }
+
+    private int getChunkIndex(int chunkX, int chunkY, int chunkZ) {
+        return (chunkX + chunkY * this.xChunks) * this.zChunks + chunkZ;
     }
 
     @Override
     public void close() {
+        this.chunkBuilder.close();
+
         for (Chunk chunk : this.chunks) {
             if (chunk != null) {
                 chunk.close();
             }
         }
+
+        this.arena.close();
     }
 
     public static class Chunk implements Closeable {
-        private static int rebuiltThisFrame;
-
         private final World world;
-        private final int x;
-        private final int y;
-        private final int z;
-        private boolean dirty;
-        private final VertexBuffer[] vertexBuffers;
+        private final TerrainArena arena;
+        public final int x;
+        public final int y;
+        public final int z;
+        private int version;
+        private int uploadedVersion = -1;
+        private final ArenaAllocator.Allocation[] allocations;
+        private final int[] vertexCounts;
+        private final int[] perBlockVertexCounts;
+        private long visibility = ChunkOcclusionGraph.ALL_VISIBLE;
+        boolean queued;
+        boolean urgent;
+        boolean visible;
+        long queuedTime;
+        double distanceSquared;
         public final Box box;
-        private ByteBuffer buffer;
 
-        public Chunk(World world, int x, int y, int z) {
+        public Chunk(World world, TerrainArena arena, int x, int y, int z) {
             this.world = world;
+            this.arena = arena;
             this.x = x;
             this.y = y;
             this.z = z;
             this.box = new Box(x * World.CHUNK_SIZE, y * World.CHUNK_SIZE, z * World.CHUNK_SIZE, (x + 1) * World.CHUNK_SIZE, (y + 1) * World.CHUNK_SIZE, (z + 1) * World.CHUNK_SIZE);
-            this.vertexBuffers = new VertexBuffer[2];
-            this.markDirty();
+            this.allocations = new ArenaAllocator.Allocation[ChunkBuilder.LAYER_COUNT];
+            this.vertexCounts = new int[ChunkBuilder.LAYER_COUNT];
+            this.perBlockVertexCounts = new int[ChunkBuilder.LAYER_COUNT];
         }
 
         public void markDirty() {
-            this.dirty = true;
+            ++this.version;
         }
 
-        private void rebuild(int layer) {
-            if (Chunk.rebuiltThisFrame == 2 * 5) return;
-            ++Chunk.rebuiltThisFrame;
+        void scheduleRebuild(ChunkBuilder chunkBuilder, boolean greedyMeshing) {
+            chunkBuilder.schedule(this, this.version, new ChunkRendererRegion(this.world, this.x, this.y, this.z), greedyMeshing);
+        }
 
-            if (this.vertexBuffers[layer] == null) {
-                this.vertexBuffers[layer] = new VertexBuffer();
-            }
+        void upload(ChunkBuilder.BuiltChunk builtChunk) {
+            // Builds can finish out of order, never let an older mesh replace a newer one
+            if (builtChunk.version <= this.uploadedVersion) return;
+            this.uploadedVersion = builtChunk.version;
+            this.visibility = builtChunk.visibility;
 
-            if (this.buffer == null) {
-                this.buffer = MemoryUtil.memAlloc((((12 + 8 + 4) * 4) * 6) * (World.CHUNK_SIZE * World.CHUNK_SIZE * World.CHUNK_SIZE));
-            }
+            for (int layer = 0; layer < ChunkBuilder.LAYER_COUNT; ++layer) {
+                int vertexCount = builtChunk.vertexCounts[layer];
+                this.vertexCounts[layer] = vertexCount;
+                this.perBlockVertexCounts[layer] = builtChunk.perBlockVertexCounts[layer];
 
-            BufferBuilder builder = new BufferBuilder(MemoryUtil.memAddress(this.buffer));
-            MatrixStack matrices = new MatrixStack();
-            builder.begin();
-            for (int y = 0; y < World.CHUNK_SIZE; ++y) {
-                for (int z = 0; z < World.CHUNK_SIZE; ++z) {
-                    for (int x = 0; x < World.CHUNK_SIZE; ++x) {
-                        int blockX = this.x * World.CHUNK_SIZE + x;
-                        int blockY = this.y * World.CHUNK_SIZE + y;
-                        int blockZ = this.z * World.CHUNK_SIZE + z;
-
-                        int blockId = this.world.getBlockId(blockX, blockY, blockZ);
-                        if (blockId == 0) continue;
-
-                        matrices.push();
-                        matrices.translate(x, y, z);
-                        Block.render(this.world, matrices, builder, blockX, blockY, blockZ, this.world.isTopLayer(blockY), layer);
-                        matrices.pop();
+                if (vertexCount == 0) {
+                    if (this.allocations[layer] != null) {
+                        this.arena.free(this.allocations[layer]);
+                        this.allocations[layer] = null;
                     }
+                    continue;
                 }
-            }
 
-            this.vertexBuffers[layer].upload(DrawMode.QUADS, VertexLayout.POS_UV_COLOR, MemoryUtil.memSlice(this.buffer, 0, builder.end() * (12 + 8 + 4)), builder.end());
-            this.dirty = false;
-        }
-
-        public void render(int layer) {
-            if (this.dirty) {
-                this.rebuild(0);
-                this.rebuild(1);
-            }
-
-            if (!this.dirty && this.vertexBuffers[layer].getIndexCount() > 0) {
-                this.vertexBuffers[layer].bind();
-                this.vertexBuffers[layer].draw();
+                this.allocations[layer] = this.arena.upload(this.allocations[layer], builtChunk.layers[layer], vertexCount);
             }
         }
 
         @Override
         public void close() {
-            for (VertexBuffer vertexBuffer : this.vertexBuffers) {
-                if (vertexBuffer != null) vertexBuffer.close();
-            }
-
-            if (this.buffer != null) {
-                MemoryUtil.memFree(this.buffer);
+            for (int layer = 0; layer < this.allocations.length; ++layer) {
+                if (this.allocations[layer] != null) {
+                    this.arena.free(this.allocations[layer]);
+                    this.allocations[layer] = null;
+                }
             }
         }
     }
@@ -0,0 +1,128 @@
+package me.kalmemarq.render;
+
+import me.kalmemarq.entity.ZombieSnapshot;
+import me.kalmemarq.entity.model.Model;
+import me.kalmemarq.entity.model.ZombieModel;
+import me.kalmemarq.render.vertex.QuadIndexBuffer;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+// The zombie mesh is baked once in model space with each vertex tagged by its part, the pose is computed in
+// zombie.vert.glsl from the per-instance position, yaw and animation time
+public class ZombieRenderer implements Closeable {
+    private static final int VERTEX_SIZE = 36;
+    private static final int INSTANCE_SIZE = 20;
+    // Keeps the animation time small enough for float precision and GPU sin, wrapping costs one pose jump every ~13 minutes
+    private static final double ANIMATION_TIME_PERIOD = 8192.0d;
+
+    private final int vao;
+    private final int vertexBuffer;
+    private final int instanceBuffer;
+    private final int vertexCount;
+    private ByteBuffer instances;
+    private int instanceCount;
+
+    public ZombieRenderer(ZombieModel model) {
+        this.vao = GL45.glCreateVertexArrays();
+        this.vertexBuffer = GL45.glCreateBuffers();
+        this.instanceBuffer = GL45.glCreateBuffers();
+        this.instances = MemoryUtil.memAlloc(INSTANCE_SIZE * 256);
+
+        Model.ModelPart[] parts = model.getParts();
+        int cuboidCount = 0;
+        for (Model.ModelPart part : parts) {
+            if (part.hasChildren()) {
+                throw new IllegalStateException("Instanced zombie mesh does not support nested model parts");
+            }
+            cuboidCount += part.getCuboids().size();
+        }
+
+        this.vertexCount = cuboidCount * 6 * 4;
+        ByteBuffer vertices = MemoryUtil.memAlloc(this.vertexCount * VERTEX_SIZE);
+        for (int i = 0; i < parts.length; ++i) {
+            Model.ModelPart part = parts[i];
+            for (Model.Cuboid cuboid : part.getCuboids()) {
+                for (Model.Quad quad : cuboid.faces()) {
+                    for (Model.Vertex vertex : quad.vertices()) {
+                        vertices.putFloat(vertex.x()).putFloat(vertex.y()).putFloat(vertex.z());
+                        vertices.putFloat(vertex.u()).putFloat(vertex.v());
+                        vertices.putFloat(part.pivotX).putFloat(part.pivotY).putFloat(part.pivotZ);
+                        vertices.putInt(i);
+                    }
+                }
+            }
+        }
+        vertices.flip();
+        GL45.glNamedBufferStorage(this.vertexBuffer, vertices, 0);
+        MemoryUtil.memFree(vertices);
+
+        GL45.glVertexArrayVertexBuffer(this.vao, 0, this.vertexBuffer, 0, VERTEX_SIZE);
+        this.setupAttribute(0, 0, 3, 0);
+        this.setupAttribute(1, 0, 2, 12);
+        this.setupAttribute(2, 0, 3, 20);
+        GL45.glEnableVertexArrayAttrib(this.vao, 3);
+        GL45.glVertexArrayAttribIFormat(this.vao, 3, 1, GL30.GL_INT, 32);
+        GL45.glVertexArrayAttribBinding(this.vao, 3, 0);
+
+        GL45.glVertexArrayVertexBuffer(this.vao, 1, this.instanceBuffer, 0, INSTANCE_SIZE);
+        GL45.glVertexArrayBindingDivisor(this.vao, 1, 1);
+        this.setupAttribute(4, 1, 4, 0);
+        this.setupAttribute(5, 1, 1, 16);
+
+        QuadIndexBuffer.getInstance().ensureCapacity(this.vertexCount);
+        GL45.glVertexArrayElementBuffer(this.vao, QuadIndexBuffer.getInstance().getId());
+    }
+
+    private void setupAttribute(int index, int binding, int size, int offset) {
+        GL45.glEnableVertexArrayAttrib(this.vao, index);
+        GL45.glVertexArrayAttribFormat(this.vao, index, size, GL30.GL_FLOAT, false, offset);
+        GL45.glVertexArrayAttribBinding(this.vao, index, binding);
+    }
+
+    // Collects the visible zombies into the instance buffer and returns how many there are
+    public int prepare(ZombieSnapshot zombies, Frustum frustum, float tickDelta) {
+        this.instances.clear();
+        this.instanceCount = 0;
+        double time = ZombieModel.getAnimationTime(0.0f);
+        zombies.forEachVisible(frustum::isVisible, tickDelta, (i) -> this.addInstance(zombies, i, tickDelta, time));
+
+        this.instances.flip();
+        if (this.instanceCount > 0) {
+            GL45.glNamedBufferData(this.instanceBuffer, this.instances, GL30.GL_STREAM_DRAW);
+        }
+        return this.instanceCount;
+    }
+
+    private void addInstance(ZombieSnapshot zombies, int i, float tickDelta, double time) {
+        if (this.instances.remaining() < INSTANCE_SIZE) {
+            this.instances = MemoryUtil.memRealloc(this.instances, this.instances.capacity() * 2);
+        }
+
+        this.instances.putFloat(zombies.getLerpedX(i, tickDelta));
+        this.instances.putFloat(zombies.getLerpedY(i, tickDelta));
+        this.instances.putFloat(zombies.getLerpedZ(i, tickDelta));
+        this.instances.putFloat(zombies.getYaw(i));
+        this.instances.putFloat((float) ((time + zombies.getTimeOffset(i)) % ANIMATION_TIME_PERIOD));
+        ++this.instanceCount;
+    }
+
+    public void draw() {
+        if (this.instanceCount == 0) return;
+        GL30.glBindVertexArray(this.vao);
+        QuadIndexBuffer quadIndexBuffer = QuadIndexBuffer.getInstance();
+        GL31.glDrawElementsInstanced(GL30.GL_TRIANGLES, DrawMode.QUADS.getIndexCount(this.vertexCount), quadIndexBuffer.getIndexType(), 0L, this.instanceCount);
+    }
+
+    @Override
+    public void close() {
+        GL30.glDeleteVertexArrays(this.vao);
+        GL30.glDeleteBuffers(this.vertexBuffer);
+        GL30.glDeleteBuffers(this.instanceBuffer);
+        MemoryUtil.memFree(this.instances);
+    }
+}
@@ -5,7 +5,7 @@ import org.joml.Matrix4f;
 import org.lwjgl.system.MemoryUtil;
 
 public class BufferBuilder {
-    private final long pointer;
+    private long pointer;
     private int cursor;
     private int vertexCount;
 
@@ -18,6 +18,12 @@ public class BufferBuilder {
         this.vertexCount = 0;
     }
 
+    // Retargets the builder, used to write straight into mapped buffer memory
+    public void begin(long pointer) {
+        this.pointer = pointer;
+        this.begin();
+    }
+
     public BufferBuilder vertex(Matrix4f matrix, float x, float y, float z) {
         float tX = MathUtils.transformXByMatrix(matrix, x, y, z);
         float tY = MathUtils.transformYByMatrix(matrix, x, y, z);
@@ -66,6 +72,16 @@ public class BufferBuilder {
         return this;
     }
 
+    // 6 bits per chunk local coordinate and tile local UV (0..32), shade in 1/20 steps so every sky and face shade combination is exact
+    public BufferBuilder packedTerrain(int x, int y, int z, int u, int v, int tile, float shade) {
+        int packedShade = Math.round(shade * 20.0f);
+        MemoryUtil.memPutInt(this.pointer + this.cursor, x | (y << 6) | (z << 12) | (packedShade << 18));
+        MemoryUtil.memPutInt(this.pointer + this.cursor + 4, u | (v << 6) | (tile << 12));
+        this.cursor += 8;
+        this.vertexCount++;
+        return this;
+    }
+
     public int end() {
         return this.vertexCount;
     }
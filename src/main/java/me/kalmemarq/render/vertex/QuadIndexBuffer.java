@@ -0,0 +1,105 @@
+package me.kalmemarq.render.vertex;
+
+import me.kalmemarq.util.TimeUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL45;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+// One 0, 1, 2, 2, 3, 0 index pattern shared by every QUADS draw. Growing re-specifies the same buffer name, so VAOs
+// that reference it stay valid, but the index type can change and must be read at draw time.
+public class QuadIndexBuffer implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("QuadIndexBuffer");
+    private static final int MAX_SHORT_VERTICES = 65536;
+    private static QuadIndexBuffer instance;
+
+    private final int id;
+    private int vertexCapacity;
+    private int indexType = GL30.GL_UNSIGNED_SHORT;
+    private long uploadedBytes;
+    private long uploadNanos;
+
+    private QuadIndexBuffer() {
+        this.id = GL45.glCreateBuffers();
+    }
+
+    public static QuadIndexBuffer getInstance() {
+        if (instance == null) {
+            instance = new QuadIndexBuffer();
+        }
+        return instance;
+    }
+
+    public static void cleanup() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public int getIndexType() {
+        return this.indexType;
+    }
+
+    public int getIndexSize() {
+        return this.indexType == GL30.GL_UNSIGNED_SHORT ? 2 : 4;
+    }
+
+    public long getSize() {
+        return (long) (this.vertexCapacity / 4) * 6 * this.getIndexSize();
+    }
+
+    public long getUploadedBytes() {
+        return this.uploadedBytes;
+    }
+
+    // Time spent generating and uploading the indices over every resize
+    public long getUploadNanos() {
+        return this.uploadNanos;
+    }
+
+    public void ensureCapacity(int vertexCount) {
+        if (vertexCount <= this.vertexCapacity) return;
+
+        int newCapacity = Math.max(Math.max(vertexCount, this.vertexCapacity * 2), 4096);
+        if (vertexCount <= MAX_SHORT_VERTICES) {
+            newCapacity = Math.min(newCapacity, MAX_SHORT_VERTICES);
+        }
+        newCapacity = (newCapacity + 3) & ~3;
+
+        long start = TimeUtils.nanoTime();
+        int quadCount = newCapacity / 4;
+        int indexType = newCapacity <= MAX_SHORT_VERTICES ? GL30.GL_UNSIGNED_SHORT : GL30.GL_UNSIGNED_INT;
+        int indexSize = indexType == GL30.GL_UNSIGNED_SHORT ? 2 : 4;
+        ByteBuffer indices = MemoryUtil.memAlloc(quadCount * 6 * indexSize);
+        for (int i = 0, j = 0; i < quadCount; ++i, j += 4) {
+            if (indexType == GL30.GL_UNSIGNED_SHORT) {
+                indices.putShort((short) j).putShort((short) (j + 1)).putShort((short) (j + 2)).putShort((short) (j + 2)).putShort((short) (j + 3)).putShort((short) j);
+            } else {
+                indices.putInt(j).putInt(j + 1).putInt(j + 2).putInt(j + 2).putInt(j + 3).putInt(j);
+            }
+        }
+        indices.flip();
+        GL45.glNamedBufferData(this.id, indices, GL30.GL_STATIC_DRAW);
+        this.uploadedBytes += indices.remaining();
+        MemoryUtil.memFree(indices);
+        this.uploadNanos += TimeUtils.nanoTime() - start;
+
+        this.vertexCapacity = newCapacity;
+        this.indexType = indexType;
+        LOGGER.debug("Resized to {} vertices ({} bit indices)", newCapacity, indexSize * 8);
+    }
+
+    @Override
+    public void close() {
+        GL30.glDeleteBuffers(this.id);
+    }
+}
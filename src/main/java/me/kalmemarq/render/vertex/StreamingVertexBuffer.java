@@ -0,0 +1,123 @@
+package me.kalmemarq.render.vertex;
+
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Persistently mapped ring that vertices are written into directly. Every draw that reads a range is followed by a
+// fence, and a range is only handed out again once the fences of the draws that read it have signaled.
+public class StreamingVertexBuffer implements Closeable {
+    private static final int STORAGE_FLAGS = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+
+    private final int id;
+    private final int capacity;
+    private final ByteBuffer mapped;
+    private final long address;
+    private final ArrayDeque<Fence> fences = new ArrayDeque<>();
+    private int cursor;
+    private int stallCount;
+    private long stallNanos;
+
+    public StreamingVertexBuffer(int capacity) {
+        this.capacity = capacity;
+        this.id = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, this.id);
+        GL44.glBufferStorage(GL30.GL_ARRAY_BUFFER, capacity, STORAGE_FLAGS);
+        this.mapped = GL30.glMapBufferRange(GL30.GL_ARRAY_BUFFER, 0, capacity, STORAGE_FLAGS);
+        if (this.mapped == null) {
+            throw new RuntimeException("Failed to map streaming vertex buffer");
+        }
+        this.address = MemoryUtil.memAddress(this.mapped);
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public long getAddress() {
+        return this.address;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getStallCount() {
+        return this.stallCount;
+    }
+
+    public long getStallNanos() {
+        return this.stallNanos;
+    }
+
+    // Returns the byte offset of a range of maxBytes that is safe to write, aligned to the stride so it can be drawn
+    // with a base vertex
+    public int reserve(int stride, int maxBytes) {
+        if (maxBytes > this.capacity) {
+            throw new IllegalArgumentException("Reservation of " + maxBytes + " bytes exceeds the ring capacity of " + this.capacity);
+        }
+
+        int start = (this.cursor + stride - 1) / stride * stride;
+        if (start + maxBytes > this.capacity) {
+            start = 0;
+        }
+        this.waitForRange(start, start + maxBytes);
+        return start;
+    }
+
+    // Called after the draw that reads [start, start + bytes) has been issued
+    public void commit(int start, int bytes) {
+        if (bytes == 0) return;
+        this.fences.addLast(new Fence(GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0), start, start + bytes));
+        this.cursor = start + bytes;
+    }
+
+    // Fences signal in submission order, so waiting on the newest overlapping one retires every older one as well
+    private void waitForRange(int start, int end) {
+        Fence newest = null;
+        for (Fence fence : this.fences) {
+            if (fence.start < end && start < fence.end) {
+                newest = fence;
+            }
+        }
+        if (newest == null) return;
+
+        int status = GL32.glClientWaitSync(newest.sync, 0, 0L);
+        if (status == GL32.GL_TIMEOUT_EXPIRED) {
+            long waitStart = System.nanoTime();
+            do {
+                status = GL32.glClientWaitSync(newest.sync, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L);
+            } while (status == GL32.GL_TIMEOUT_EXPIRED);
+            this.stallNanos += System.nanoTime() - waitStart;
+            ++this.stallCount;
+        }
+        if (status == GL32.GL_WAIT_FAILED) {
+            throw new IllegalStateException("Waiting on a streaming buffer fence failed");
+        }
+
+        Fence fence;
+        do {
+            fence = this.fences.removeFirst();
+            GL32.glDeleteSync(fence.sync);
+        } while (fence != newest);
+    }
+
+    @Override
+    public void close() {
+        for (Fence fence : this.fences) {
+            GL32.glDeleteSync(fence.sync);
+        }
+        this.fences.clear();
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, this.id);
+        GL30.glUnmapBuffer(GL30.GL_ARRAY_BUFFER);
+        GL30.glDeleteBuffers(this.id);
+    }
+
+    private record Fence(long sync, int start, int end) {
+    }
+}
@@ -6,6 +6,7 @@ public class VertexLayout {
     public static final VertexLayout POS = new VertexLayout(Attribute.POSITION);
     public static final VertexLayout POS_UV = new VertexLayout(Attribute.POSITION, Attribute.UV);
     public static final VertexLayout POS_UV_COLOR = new VertexLayout(Attribute.POSITION, Attribute.UV, Attribute.COLOR);
+    public static final VertexLayout TERRAIN = new VertexLayout(Attribute.PACKED_TERRAIN);
 
     private final Attribute[] attributes;
     private final int[] offsets;
@@ -25,7 +26,11 @@ public class VertexLayout {
     public void enable() {
         for (int i = 0; i < this.attributes.length; ++i) {
             Attribute attribute = this.attributes[i];
-            GL30.glVertexAttribPointer(i, attribute.size, attribute.glType, attribute.normalized, this.stride, this.offsets[i]);
+            if (attribute.integer) {
+                GL30.glVertexAttribIPointer(i, attribute.size, attribute.glType, this.stride, this.offsets[i]);
+            } else {
+                GL30.glVertexAttribPointer(i, attribute.size, attribute.glType, attribute.normalized, this.stride, this.offsets[i]);
+            }
             GL30.glEnableVertexAttribArray(i);
         }
     }
@@ -40,18 +45,26 @@ public class VertexLayout {
         POSITION(3, GL30.GL_FLOAT, 12, false),
         UV(2, GL30.GL_FLOAT, 8, false),
         COLOR(4, GL30.GL_UNSIGNED_BYTE, 4, true),
-        NORMAL(3, GL30.GL_BYTE, 3, false);
+        NORMAL(3, GL30.GL_BYTE, 3, false),
+        // x, y, z, shade | u, v, tile, see BufferBuilder.packedTerrain
+        PACKED_TERRAIN(2, GL30.GL_UNSIGNED_INT, 8, false, true);
 
         public final int size;
         public final int glType;
         public final int byteLength;
         public final boolean normalized;
+        public final boolean integer;
 
         Attribute(int size, int glType, int byteLength, boolean normalized) {
+            this(size, glType, byteLength, normalized, false);
+        }
+
+        Attribute(int size, int glType, int byteLength, boolean normalized, boolean integer) {
             this.size = size;
             this.glType = glType;
             this.byteLength = byteLength;
             this.normalized = normalized;
+            this.integer = integer;
         }
     }
 }
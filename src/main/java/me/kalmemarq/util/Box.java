@@ -36,8 +36,22 @@ public class Box {
         this.maxZ += z;
     }
 
+    public Box set(Box other) {
+        this.minX = other.minX;
+        this.minY = other.minY;
+        this.minZ = other.minZ;
+        this.maxX = other.maxX;
+        this.maxY = other.maxY;
+        this.maxZ = other.maxZ;
+        return this;
+    }
+
     public Box grow(float x, float y, float z) {
-        Box box = new Box(this);
+        return this.grow(x, y, z, new Box(this));
+    }
+
+    public Box grow(float x, float y, float z, Box dest) {
+        Box box = dest.set(this);
 
         if (x < 0f) box.minX += x;
         else if (x > 0f) box.maxX += x;
@@ -63,7 +77,7 @@ public class Box {
         return vec != null && vec.x >= this.minX && vec.x <= this.maxX && vec.y >= this.minY && vec.y <= this.maxY;
     }
 
-    private float adjustDeltaByDirection(float thisMin, float thisMax, float otherMin, float otherMax, float delta) {
+    private static float adjustDeltaByDirection(float thisMin, float thisMax, float otherMin, float otherMax, float delta) {
         if (delta > 0f && otherMax <= thisMin) {
             delta = Math.min(thisMin - otherMax, delta);
         }
@@ -74,22 +88,35 @@ public class Box {
     }
 
     public float clipXCollide(Box other, float xd) {
-        if ((other.maxY > this.minY && other.minY < this.maxY) && (other.maxZ > this.minZ && other.minZ < this.maxZ)) {
-            return this.adjustDeltaByDirection(this.minX, this.maxX, other.minX, other.maxX, xd);
+        return clipXCollide(this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ, other, xd);
+    }
+
+    public float clipYCollide(Box other, float yd) {
+        return clipYCollide(this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ, other, yd);
+    }
+
+    public float clipZCollide(Box other, float zd) {
+        return clipZCollide(this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ, other, zd);
+    }
+
+    // Same as the instance methods but for a solid box given by its bounds, so callers need not allocate one
+    public static float clipXCollide(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Box other, float xd) {
+        if ((other.maxY > minY && other.minY < maxY) && (other.maxZ > minZ && other.minZ < maxZ)) {
+            return adjustDeltaByDirection(minX, maxX, other.minX, other.maxX, xd);
         }
         return xd;
     }
 
-    public float clipYCollide(Box other, float yd) {
-        if ((other.maxX > this.minX && other.minX < this.maxX) && (other.maxZ > this.minZ && other.minZ < this.maxZ)) {
-            return this.adjustDeltaByDirection(this.minY, this.maxY, other.minY, other.maxY, yd);
+    public static float clipYCollide(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Box other, float yd) {
+        if ((other.maxX > minX && other.minX < maxX) && (other.maxZ > minZ && other.minZ < maxZ)) {
+            return adjustDeltaByDirection(minY, maxY, other.minY, other.maxY, yd);
         }
         return yd;
     }
 
-    public float clipZCollide(Box other, float zd) {
-        if ((other.maxX > this.minX && other.minX < this.maxX) && (other.maxY > this.minY && other.minY < this.maxY)) {
-            return this.adjustDeltaByDirection(this.minZ, this.maxZ, other.minZ, other.maxZ, zd);
+    public static float clipZCollide(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Box other, float zd) {
+        if ((other.maxX > minX && other.minX < maxX) && (other.maxY > minY && other.minY < maxY)) {
+            return adjustDeltaByDirection(minZ, maxZ, other.minZ, other.maxZ, zd);
         }
         return zd;
     }
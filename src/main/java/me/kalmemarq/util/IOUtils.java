@@ -18,13 +18,15 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 public class IOUtils {
     public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(JsonParser.Feature.ALLOW_COMMENTS, true);
     private static Path resourcesPath;
 
-    public static Path getResourcesPath() {
+    public static synchronized Path getResourcesPath() {
         if (resourcesPath == null) {
             try {
                 URI uri = Objects.requireNonNull(IOUtils.class.getResource("/.root")).toURI();
@@ -80,4 +82,17 @@ public class IOUtils {
             return false;
         }
     }
+
+    // Best effort, whatever cannot be deleted is left behind
+    public static void deleteDirectory(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach((file) -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
 }
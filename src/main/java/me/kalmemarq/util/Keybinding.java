@@ -17,6 +17,9 @@ public record Keybinding(int... possibleKeys) {
     public static final Keybinding GO_TO_RANDOM_POS = new Keybinding(GLFW.GLFW_KEY_R);
     public static final Keybinding FLY = new Keybinding(GLFW.GLFW_KEY_J);
     public static final Keybinding NO_CLIP = new Keybinding(GLFW.GLFW_KEY_N);
+    public static final Keybinding TOGGLE_GREEDY_MESHING = new Keybinding(GLFW.GLFW_KEY_G);
+    public static final Keybinding DUMP_PROFILER = new Keybinding(GLFW.GLFW_KEY_F6);
+    public static final Keybinding TOGGLE_CAPTURE = new Keybinding(GLFW.GLFW_KEY_F9);
 
     public boolean isPressed(Window window) {
         for (int key : this.possibleKeys) {
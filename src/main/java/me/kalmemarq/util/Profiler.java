@@ -0,0 +1,295 @@
+package me.kalmemarq.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Hierarchical section timer for one thread. Sections are pushed and popped between startFrame and endFrame, and
+// every frame's times go into a rolling window per section. The stats can be read from any thread, the sections
+// themselves only from the thread the profiler is bound to.
+public class Profiler {
+    public static final int WINDOW = 120;
+    private static final int MAX_PENDING_GPU = 1024;
+    private static final List<Profiler> PROFILERS = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Profiler> CURRENT = new ThreadLocal<>();
+    // Handed out on threads without a profiler of their own, every call returns right away
+    private static final Profiler DISABLED = new Profiler("Disabled", false);
+
+    private final String name;
+    private final boolean enabled;
+    private final Section root;
+    private Section current;
+    private GpuTimer gpuTimer;
+    private final int[] pendingStarts = new int[MAX_PENDING_GPU];
+    private final int[] pendingEnds = new int[MAX_PENDING_GPU];
+    private final Section[] pendingSections = new Section[MAX_PENDING_GPU];
+    private int pendingHead;
+    private int pendingCount;
+    private int windowIndex;
+    private long frameCount;
+
+    public Profiler(String name) {
+        this(name, true);
+    }
+
+    private Profiler(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+        this.root = new Section(name, null);
+        if (enabled) {
+            PROFILERS.add(this);
+        }
+    }
+
+    public static Profiler get() {
+        Profiler profiler = CURRENT.get();
+        return profiler != null ? profiler : DISABLED;
+    }
+
+    public static List<Profiler> getProfilers() {
+        return PROFILERS;
+    }
+
+    public void bindToCurrentThread() {
+        CURRENT.set(this);
+    }
+
+    public void close() {
+        PROFILERS.remove(this);
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void setGpuTimer(GpuTimer gpuTimer) {
+        this.gpuTimer = gpuTimer;
+    }
+
+    public void startFrame() {
+        if (!this.enabled) return;
+        if (this.current != null) {
+            throw new IllegalStateException("Profiler " + this.name + " frame already started");
+        }
+        this.current = this.root;
+        this.begin(this.root);
+    }
+
+    public void push(String name) {
+        if (!this.enabled || this.current == null) return;
+        Section section = this.current.getChild(name);
+        if (section == null) {
+            synchronized (this) {
+                section = new Section(name, this.current);
+                this.current.children.add(section);
+            }
+        }
+        this.current = section;
+        this.begin(section);
+    }
+
+    public void pop() {
+        if (!this.enabled || this.current == null) return;
+        if (this.current == this.root) {
+            throw new IllegalStateException("Profiler " + this.name + " popped more sections than were pushed");
+        }
+        this.end(this.current);
+        this.current = this.current.parent;
+    }
+
+    // Adds time measured elsewhere, for example summed over worker threads, as a child of the current section
+    public void record(String name, long nanos, int calls) {
+        if (!this.enabled || this.current == null) return;
+        Section section = this.current.getChild(name);
+        if (section == null) {
+            synchronized (this) {
+                section = new Section(name, this.current);
+                this.current.children.add(section);
+            }
+        }
+        section.frameNanos += nanos;
+        section.frameCalls += calls;
+    }
+
+    public void endFrame() {
+        if (!this.enabled || this.current == null) return;
+        if (this.current != this.root) {
+            throw new IllegalStateException("Profiler section " + this.current.name + " was never popped");
+        }
+        this.end(this.root);
+        this.current = null;
+        this.resolveGpuTimes();
+
+        synchronized (this) {
+            this.root.rotate(this.windowIndex);
+            this.windowIndex = (this.windowIndex + 1) % WINDOW;
+            ++this.frameCount;
+        }
+    }
+
+    private void begin(Section section) {
+        section.start = TimeUtils.nanoTime();
+        if (this.gpuTimer != null) {
+            section.gpuStartQuery = this.gpuTimer.timestamp();
+        }
+    }
+
+    private void end(Section section) {
+        if (this.gpuTimer != null) {
+            int endQuery = this.gpuTimer.timestamp();
+            if (section.gpuStartQuery != GpuTimer.NONE && endQuery != GpuTimer.NONE && this.pendingCount < MAX_PENDING_GPU) {
+                int slot = (this.pendingHead + this.pendingCount++) % MAX_PENDING_GPU;
+                this.pendingStarts[slot] = section.gpuStartQuery;
+                this.pendingEnds[slot] = endQuery;
+                this.pendingSections[slot] = section;
+            } else {
+                if (section.gpuStartQuery != GpuTimer.NONE) this.gpuTimer.release(section.gpuStartQuery);
+                if (endQuery != GpuTimer.NONE) this.gpuTimer.release(endQuery);
+            }
+            section.gpuStartQuery = GpuTimer.NONE;
+        }
+        section.frameNanos += TimeUtils.nanoTime() - section.start;
+        ++section.frameCalls;
+    }
+
+    // Timestamps complete in submission order, so this stops at the first one the GPU has not reached yet
+    private void resolveGpuTimes() {
+        while (this.pendingCount > 0) {
+            int slot = this.pendingHead;
+            long end = this.gpuTimer.poll(this.pendingEnds[slot]);
+            if (end < 0L) break;
+            long start = this.gpuTimer.poll(this.pendingStarts[slot]);
+            if (start >= 0L) {
+                Section section = this.pendingSections[slot];
+                section.gpuFrameNanos += end - start;
+                section.hasGpuTime = true;
+            }
+            this.gpuTimer.release(this.pendingStarts[slot]);
+            this.gpuTimer.release(this.pendingEnds[slot]);
+            this.pendingSections[slot] = null;
+            this.pendingHead = (slot + 1) % MAX_PENDING_GPU;
+            --this.pendingCount;
+        }
+    }
+
+    public synchronized long getFrameCount() {
+        return this.frameCount;
+    }
+
+    // Depth-first, parents before their children
+    public synchronized List<SectionStats> getStats() {
+        List<SectionStats> stats = new ArrayList<>();
+        int frames = (int) Math.min(this.frameCount, WINDOW);
+        this.root.collect(stats, 0, frames);
+        return stats;
+    }
+
+    public void write(Writer writer) throws IOException {
+        long frames = this.getFrameCount();
+        writer.write(this.name + " (" + frames + " frames, averages and maxima over the last " + Math.min(frames, WINDOW) + ")\n");
+        for (SectionStats stats : this.getStats()) {
+            writer.write("  ".repeat(stats.depth() + 1));
+            writer.write(String.format("%s: cpu %.3f ms avg, %.3f ms max, %.1f calls", stats.name(), stats.avgMillis(), stats.maxMillis(), stats.avgCalls()));
+            if (stats.hasGpuTime()) {
+                writer.write(String.format(", gpu %.3f ms avg, %.3f ms max", stats.avgGpuMillis(), stats.maxGpuMillis()));
+            }
+            writer.write(String.format(", %.3f ms total\n", stats.totalNanos() / 1.0e6d));
+        }
+    }
+
+    public static void dumpAll(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            for (Profiler profiler : PROFILERS) {
+                profiler.write(writer);
+                writer.write('\n');
+            }
+        }
+    }
+
+    public record SectionStats(int depth, String name, double avgMillis, double maxMillis, double avgCalls, boolean hasGpuTime, double avgGpuMillis, double maxGpuMillis, long totalNanos, long totalCalls) {
+    }
+
+    // Timestamp queries on the GPU, results are polled without ever waiting for them
+    public interface GpuTimer {
+        int NONE = -1;
+
+        // Records the time the GPU reaches this point, NONE when no query is free
+        int timestamp();
+
+        // Nanoseconds of the timestamp, or -1 while the GPU has not got there yet
+        long poll(int query);
+
+        void release(int query);
+    }
+
+    private static class Section {
+        private final String name;
+        private final Section parent;
+        private final List<Section> children = new ArrayList<>();
+        private final long[] cpuWindow = new long[WINDOW];
+        private final long[] gpuWindow = new long[WINDOW];
+        private final int[] callWindow = new int[WINDOW];
+        private long start;
+        private int gpuStartQuery = GpuTimer.NONE;
+        private long frameNanos;
+        private long gpuFrameNanos;
+        private int frameCalls;
+        private boolean hasGpuTime;
+        private long totalNanos;
+        private long totalCalls;
+
+        private Section(String name, Section parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        private Section getChild(String name) {
+            for (int i = 0, size = this.children.size(); i < size; ++i) {
+                Section child = this.children.get(i);
+                if (child.name.equals(name)) return child;
+            }
+            return null;
+        }
+
+        private void rotate(int index) {
+            this.cpuWindow[index] = this.frameNanos;
+            this.gpuWindow[index] = this.gpuFrameNanos;
+            this.callWindow[index] = this.frameCalls;
+            this.totalNanos += this.frameNanos;
+            this.totalCalls += this.frameCalls;
+            this.frameNanos = 0L;
+            this.gpuFrameNanos = 0L;
+            this.frameCalls = 0;
+            for (Section child : this.children) {
+                child.rotate(index);
+            }
+        }
+
+        private void collect(List<SectionStats> stats, int depth, int frames) {
+            long cpu = 0L;
+            long cpuMax = 0L;
+            long gpu = 0L;
+            long gpuMax = 0L;
+            long calls = 0L;
+            for (int i = 0; i < frames; ++i) {
+                cpu += this.cpuWindow[i];
+                cpuMax = Math.max(cpuMax, this.cpuWindow[i]);
+                gpu += this.gpuWindow[i];
+                gpuMax = Math.max(gpuMax, this.gpuWindow[i]);
+                calls += this.callWindow[i];
+            }
+            int divisor = Math.max(frames, 1);
+            stats.add(new SectionStats(depth, this.name, cpu / 1.0e6d / divisor, cpuMax / 1.0e6d, calls / (double) divisor, this.hasGpuTime, gpu / 1.0e6d / divisor, gpuMax / 1.0e6d, this.totalNanos, this.totalCalls));
+            for (Section child : this.children) {
+                child.collect(stats, depth + 1, frames);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package me.kalmemarq.util;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+// Named spans of work from every thread that takes part in startup. Logged once the first frame is about to be
+// drawn, and written in the Chrome trace format (chrome://tracing, Perfetto) when a path is given.
+public class StartupTimeline {
+    private static final Logger LOGGER = LogManager.getLogger("Startup");
+
+    private final long start = TimeUtils.nanoTime();
+    private final List<Span> spans = new ArrayList<>();
+
+    public <T> T time(String name, Supplier<T> supplier) {
+        long spanStart = TimeUtils.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            this.add(name, spanStart);
+        }
+    }
+
+    public void time(String name, Runnable runnable) {
+        long spanStart = TimeUtils.nanoTime();
+        try {
+            runnable.run();
+        } finally {
+            this.add(name, spanStart);
+        }
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(String name, Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> this.time(name, supplier), executor);
+    }
+
+    // Joins on the calling thread, the wait shows up as its own span so a stall on a slow worker is easy to spot
+    public <T> T join(String name, CompletableFuture<T> future) {
+        if (future.isDone()) return future.join();
+        return this.time("wait for " + name, future::join);
+    }
+
+    private void add(String name, long spanStart) {
+        Thread thread = Thread.currentThread();
+        Span span = new Span(name, thread.getName(), thread.threadId(), spanStart - this.start, TimeUtils.nanoTime() - spanStart);
+        synchronized (this.spans) {
+            this.spans.add(span);
+        }
+    }
+
+    private List<Span> getSpans() {
+        synchronized (this.spans) {
+            List<Span> spans = new ArrayList<>(this.spans);
+            spans.sort(Comparator.comparingLong(Span::startNanos));
+            return spans;
+        }
+    }
+
+    public void log() {
+        long total = TimeUtils.nanoTime() - this.start;
+        long busy = 0L;
+        List<Span> spans = this.getSpans();
+        for (Span span : spans) {
+            if (!span.name.startsWith("wait for ")) busy += span.durationNanos;
+        }
+        LOGGER.info("Started in {} ms ({} ms of work across threads)", total / 1_000_000L, busy / 1_000_000L);
+        for (Span span : spans) {
+            LOGGER.info("  {} +{} ms: {} took {} ms", String.format("%-16s", span.threadName), span.startNanos / 1_000_000L, span.name, String.format("%.1f", span.durationNanos / 1.0e6d));
+        }
+    }
+
+    public void writeTrace(Path path) {
+        ObjectNode root = IOUtils.OBJECT_MAPPER.createObjectNode();
+        ArrayNode events = root.putArray("traceEvents");
+        List<Long> namedThreads = new ArrayList<>();
+        for (Span span : this.getSpans()) {
+            if (!namedThreads.contains(span.threadId)) {
+                namedThreads.add(span.threadId);
+                ObjectNode metadata = events.addObject();
+                metadata.put("name", "thread_name").put("ph", "M").put("pid", 1).put("tid", span.threadId);
+                metadata.putObject("args").put("name", span.threadName);
+            }
+            ObjectNode event = events.addObject();
+            event.put("name", span.name).put("ph", "X").put("pid", 1).put("tid", span.threadId);
+            event.put("ts", span.startNanos / 1_000.0d).put("dur", span.durationNanos / 1_000.0d);
+        }
+        root.put("displayTimeUnit", "ms");
+
+        try {
+            IOUtils.OBJECT_MAPPER.writeValue(path.toFile(), root);
+            LOGGER.info("Wrote startup trace to {}", path);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write startup trace to {}", path, e);
+        }
+    }
+
+    private record Span(String name, String threadName, long threadId, long startNanos, long durationNanos) {
+    }
+}
@@ -2,24 +2,30 @@
 
 uniform mat4 uProjection;
 uniform mat4 uModelView;
-uniform vec3 uMeshOffset;
 
-layout(location = 0) in vec3 aPosition;
-layout(location = 1) in vec2 aUV;
-layout(location = 2) in vec4 aColor;
+// x | y << 6 | z << 12 | shade << 18, u | v << 6 | tile << 12
+layout(location = 0) in uvec2 aPacked;
+// Per draw, selected by the indirect command's baseInstance
+layout(location = 1) in vec3 aChunkOffset;
 
 out vec2 vUV;
+flat out vec2 vTileOrigin;
 out vec4 vColor;
 #ifdef FOG
 out float vVertexDistance;
 #endif
 
 void main() {
-    vec4 pos = uModelView * vec4(aPosition + uMeshOffset, 1.0);
+    vec3 position = vec3(aPacked.x & 63u, (aPacked.x >> 6u) & 63u, (aPacked.x >> 12u) & 63u);
+    float shade = float((aPacked.x >> 18u) & 31u) / 20.0;
+    uint tile = (aPacked.y >> 12u) & 255u;
+
+    vec4 pos = uModelView * vec4(position + aChunkOffset, 1.0);
     gl_Position = uProjection * pos;
 #ifdef FOG
     vVertexDistance = length(pos.xyz);
 #endif
-    vUV = aUV;
-    vColor = aColor;
-}
\ No newline at end of file
+    vTileOrigin = vec2(tile & 15u, tile >> 4u) / 16.0;
+    vUV = vec2(aPacked.y & 63u, (aPacked.y >> 6u) & 63u);
+    vColor = vec4(shade, shade, shade, 1.0);
+}
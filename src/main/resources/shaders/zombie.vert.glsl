@@ -0,0 +1,58 @@
+#version 330
+
+uniform mat4 uProjection;
+uniform mat4 uModelView;
+
+layout(location = 0) in vec3 aPosition;
+layout(location = 1) in vec2 aUV;
+layout(location = 2) in vec3 aPivot;
+layout(location = 3) in int aPart;
+layout(location = 4) in vec4 aInstance;
+layout(location = 5) in float aTime;
+
+out vec2 vUV;
+out vec4 vColor;
+
+const float PI = 3.14159265;
+const float MODEL_SCALE = 1.86 / 32.0;
+
+mat3 rotateX(float angle) {
+    float c = cos(angle);
+    float s = sin(angle);
+    return mat3(1.0, 0.0, 0.0, 0.0, c, s, 0.0, -s, c);
+}
+
+mat3 rotateY(float angle) {
+    float c = cos(angle);
+    float s = sin(angle);
+    return mat3(c, 0.0, -s, 0.0, 1.0, 0.0, s, 0.0, c);
+}
+
+mat3 rotateZ(float angle) {
+    float c = cos(angle);
+    float s = sin(angle);
+    return mat3(c, s, 0.0, -s, c, 0.0, 0.0, 0.0, 1.0);
+}
+
+// Part angles over the animation time, as (x, y, z) for ModelPart.rotateZYX
+vec3 getPartAngles(int part, float time) {
+    if (part == 0) return vec3(sin(time) * 0.8, sin(time * 0.83), 0.0);
+    if (part == 2) return vec3(sin(time * 0.6662 + PI) * 2.0, 0.0, sin(time * 0.2312) + 1.0);
+    if (part == 3) return vec3(sin(time * 0.6662) * 2.0, 0.0, sin(time * 0.2812) - 1.0);
+    if (part == 4) return vec3(sin(time * 0.6662) * 1.4, 0.0, 0.0);
+    if (part == 5) return vec3(sin(time * 0.6662 + PI) * 1.4, 0.0, 0.0);
+    return vec3(0.0);
+}
+
+void main() {
+    vec3 angles = getPartAngles(aPart, aTime);
+    vec3 position = aPivot + rotateZ(angles.z) * rotateY(angles.y) * rotateX(angles.x) * aPosition;
+
+    position = rotateY(aInstance.w + PI / 2.0) * position;
+    position.y += -abs(sin(aTime * 0.6662)) * 5.0 - 23.0;
+    position *= vec3(MODEL_SCALE, -MODEL_SCALE, MODEL_SCALE);
+
+    gl_Position = uProjection * uModelView * vec4(aInstance.xyz + position, 1.0);
+    vUV = aUV;
+    vColor = vec4(1.0);
+}
@@ -0,0 +1,84 @@
+package me.kalmemarq.entity;
+
+import me.kalmemarq.World;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Collision walks the voxel grid directly, moving an entity must not allocate once the sections it touches are loaded
+public class EntityMoveAllocationTest {
+    private static final int ENTITY_COUNT = 64;
+    private static final int WARMUP_TICKS = 20_000;
+    private static final int MEASURED_TICKS = 2_000;
+    // Room for the measurement itself, far below the boxes and lists a single allocating move creates
+    private static final double MAX_BYTES_PER_TICK = 1.0d;
+
+    @TempDir
+    Path directory;
+    private World world;
+    private Entity[] entities;
+
+    @BeforeEach
+    public void setup() {
+        this.world = new World(this.directory.resolve("level.region"), 128, 128, 64);
+        this.entities = new Entity[ENTITY_COUNT];
+        int surface = this.world.depth * 2 / 3 + 1;
+        for (int i = 0; i < ENTITY_COUNT; ++i) {
+            // Each entity walks inside its own pen, spread over several sections
+            int x = 8 + (i % 8) * 14;
+            int z = 8 + (i / 8) * 14;
+            for (int dx = -4; dx <= 4; ++dx) {
+                for (int dz = -3; dz <= 3; ++dz) {
+                    if (Math.abs(dx) == 4 || Math.abs(dz) == 3) {
+                        this.world.setBlockId(x + dx, surface, z + dz, 1);
+                    }
+                }
+            }
+
+            Entity entity = new Entity(this.world, i);
+            entity.setPosition(x + 0.3f, surface + 0.5f, z + 0.7f);
+            this.entities[i] = entity;
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.world.close();
+    }
+
+    @Test
+    public void moveDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Thread allocation counting is not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().threadId();
+
+        // Long enough for the move and clip paths to be compiled
+        this.tick(0, WARMUP_TICKS);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        this.tick(WARMUP_TICKS, MEASURED_TICKS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        double bytesPerTick = allocated / (double) MEASURED_TICKS;
+        assertTrue(bytesPerTick <= MAX_BYTES_PER_TICK, "Moving " + ENTITY_COUNT + " entities allocated " + bytesPerTick + " bytes per tick");
+    }
+
+    // Entities fall onto the surface and walk into the walls of their pen, so every axis gets clipped
+    private void tick(int from, int count) {
+        for (int tick = from; tick < from + count; ++tick) {
+            float direction = (tick / 40) % 2 == 0 ? 0.2f : -0.2f;
+            for (Entity entity : this.entities) {
+                entity.tick();
+                entity.move(direction, -0.08f, direction * 0.5f);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package me.kalmemarq.entity;
+
+import me.kalmemarq.World;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Each zombie has its own random stream and only reads the world, so splitting the tick over more threads must not
+// change a single bit of the result
+public class EntityTickerDeterminismTest {
+    private static final int ZOMBIE_COUNT = 2_000;
+    private static final int TICKS = 800;
+    // Small batches so four threads really share the work
+    private static final int BATCH_SIZE = 64;
+
+    @TempDir
+    Path directory;
+    private World world;
+
+    @BeforeEach
+    public void setup() {
+        this.world = new World(this.directory.resolve("level.region"), 64, 64, 32);
+        // A shaft through the floor, zombies above it or walking into it fall out of the world
+        for (int y = 0; y < this.world.depth; ++y) {
+            for (int z = 24; z < 40; ++z) {
+                for (int x = 24; x < 40; ++x) {
+                    this.world.setBlockId(x, y, z, 0);
+                }
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.world.close();
+    }
+
+    @Test
+    public void resultDoesNotDependOnParallelism() {
+        Run single = this.run(1);
+        Run parallel = this.run(4);
+
+        assertTrue(single.removedTotal > 0, "No zombie fell out of the world, removal is not covered");
+        assertArrayEquals(single.removedPerTick, parallel.removedPerTick, "Removals differ");
+        assertArrayEquals(single.x, parallel.x, "X positions differ");
+        assertArrayEquals(single.y, parallel.y, "Y positions differ");
+        assertArrayEquals(single.z, parallel.z, "Z positions differ");
+        assertArrayEquals(single.yaw, parallel.yaw, "Yaws differ");
+    }
+
+    private Run run(int parallelism) {
+        ZombieStore zombies = new ZombieStore(this.world);
+        for (int i = 0; i < ZOMBIE_COUNT; ++i) {
+            zombies.add(i * 0x9E3779B97F4A7C15L);
+        }
+
+        Run run = new Run();
+        run.removedPerTick = new int[TICKS];
+        try (EntityTicker ticker = new EntityTicker(parallelism, BATCH_SIZE)) {
+            for (int tick = 0; tick < TICKS; ++tick) {
+                ticker.tick(zombies.size(), zombies::tick);
+                run.removedPerTick[tick] = zombies.removeFallen();
+                run.removedTotal += run.removedPerTick[tick];
+                zombies.updateGrid();
+            }
+        }
+
+        run.x = new float[zombies.size()];
+        run.y = new float[zombies.size()];
+        run.z = new float[zombies.size()];
+        run.yaw = new float[zombies.size()];
+        for (int i = 0; i < zombies.size(); ++i) {
+            run.x[i] = zombies.getX(i);
+            run.y[i] = zombies.getY(i);
+            run.z[i] = zombies.getZ(i);
+            run.yaw[i] = zombies.getYaw(i);
+        }
+        return run;
+    }
+
+    private static class Run {
+        private int[] removedPerTick;
+        private int removedTotal;
+        private float[] x;
+        private float[] y;
+        private float[] z;
+        private float[] yaw;
+    }
+}
@@ -0,0 +1,155 @@
+package me.kalmemarq.entity;
+
+import me.kalmemarq.World;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every grid query must return exactly what testing each zombie on its own returns, while zombies move between cells,
+// fall out of the world and get swap-removed
+public class ZombieGridQueryTest {
+    private static final int ZOMBIE_COUNT = 5_000;
+    private static final int TICKS = 800;
+    private static final int CHECK_INTERVAL = 50;
+    private static final int QUERIES_PER_CHECK = 20;
+
+    @TempDir
+    Path directory;
+    private World world;
+    private ZombieStore zombies;
+    private ZombieSnapshot snapshot;
+    private Random random;
+
+    @BeforeEach
+    public void setup() {
+        this.world = new World(this.directory.resolve("level.region"), 96, 96, 32);
+        // A shaft through the floor, so some zombies leave the world and get removed
+        for (int y = 0; y < this.world.depth; ++y) {
+            for (int z = 40; z < 56; ++z) {
+                for (int x = 40; x < 56; ++x) {
+                    this.world.setBlockId(x, y, z, 0);
+                }
+            }
+        }
+
+        this.zombies = new ZombieStore(this.world);
+        for (int i = 0; i < ZOMBIE_COUNT; ++i) {
+            this.zombies.add(i * 0x9E3779B97F4A7C15L);
+        }
+        this.snapshot = new ZombieSnapshot(this.zombies.getGrid());
+        this.random = new Random(17L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.world.close();
+    }
+
+    @Test
+    public void queriesMatchBruteForce() {
+        int removed = 0;
+        for (int tick = 1; tick <= TICKS; ++tick) {
+            this.zombies.tick(0, this.zombies.size());
+            removed += this.zombies.removeFallen();
+            this.zombies.updateGrid();
+
+            if (tick % CHECK_INTERVAL == 0) {
+                this.snapshot.copyFrom(this.zombies);
+                for (int query = 0; query < QUERIES_PER_CHECK; ++query) {
+                    this.checkBox();
+                    this.checkRadius();
+                    this.checkVisible();
+                    this.checkSnapshotVisible();
+                }
+            }
+        }
+        assertTrue(removed > 0, "No zombie fell out of the world, removal is not covered");
+    }
+
+    private void checkBox() {
+        float[] box = this.randomBox();
+        boolean[] expected = new boolean[this.zombies.size()];
+        for (int i = 0; i < this.zombies.size(); ++i) {
+            expected[i] = this.zombies.getMinX(i) < box[3] && this.zombies.getMaxX(i) > box[0] && this.zombies.getMinY(i) < box[4] && this.zombies.getMaxY(i) > box[1] && this.zombies.getMinZ(i) < box[5] && this.zombies.getMaxZ(i) > box[2];
+        }
+
+        boolean[] actual = new boolean[this.zombies.size()];
+        this.zombies.forEachInBox(box[0], box[1], box[2], box[3], box[4], box[5], (i) -> mark(actual, i));
+        assertArrayEquals(expected, actual, "Box query differs");
+    }
+
+    private void checkRadius() {
+        float x = this.random.nextFloat() * this.world.width;
+        float y = this.random.nextFloat() * (this.world.depth + 20) - 10;
+        float z = this.random.nextFloat() * this.world.height;
+        float radius = 1.0f + this.random.nextFloat() * 40.0f;
+        boolean[] expected = new boolean[this.zombies.size()];
+        for (int i = 0; i < this.zombies.size(); ++i) {
+            float dx = x - Math.clamp(x, this.zombies.getMinX(i), this.zombies.getMaxX(i));
+            float dy = y - Math.clamp(y, this.zombies.getMinY(i), this.zombies.getMaxY(i));
+            float dz = z - Math.clamp(z, this.zombies.getMinZ(i), this.zombies.getMaxZ(i));
+            expected[i] = dx * dx + dy * dy + dz * dz <= radius * radius;
+        }
+
+        boolean[] actual = new boolean[this.zombies.size()];
+        this.zombies.forEachInRadius(x, y, z, radius, (i) -> mark(actual, i));
+        assertArrayEquals(expected, actual, "Radius query differs");
+    }
+
+    private void checkVisible() {
+        float[] box = this.randomBox();
+        EntityGrid.CellTest test = intersects(box);
+        boolean[] expected = new boolean[this.zombies.size()];
+        for (int i = 0; i < this.zombies.size(); ++i) {
+            expected[i] = test.test(this.zombies.getMinX(i), this.zombies.getMinY(i), this.zombies.getMinZ(i), this.zombies.getMaxX(i), this.zombies.getMaxY(i), this.zombies.getMaxZ(i));
+        }
+
+        boolean[] actual = new boolean[this.zombies.size()];
+        this.zombies.forEachVisible(test, (i) -> mark(actual, i));
+        assertArrayEquals(expected, actual, "Store visibility query differs");
+    }
+
+    // The snapshot tests each zombie's interpolated box, not just the cell it sits in
+    private void checkSnapshotVisible() {
+        float[] box = this.randomBox();
+        EntityGrid.CellTest test = intersects(box);
+        float tickDelta = this.random.nextFloat();
+        boolean[] expected = new boolean[this.snapshot.size()];
+        for (int i = 0; i < this.snapshot.size(); ++i) {
+            float x = this.snapshot.getLerpedX(i, tickDelta);
+            float y = this.snapshot.getLerpedY(i, tickDelta);
+            float z = this.snapshot.getLerpedZ(i, tickDelta);
+            expected[i] = test.test(x - ZombieStore.WIDTH / 2, y, z - ZombieStore.WIDTH / 2, x + ZombieStore.WIDTH / 2, y + ZombieStore.HEIGHT, z + ZombieStore.WIDTH / 2);
+        }
+
+        boolean[] actual = new boolean[this.snapshot.size()];
+        this.snapshot.forEachVisible(test, tickDelta, (i) -> mark(actual, i));
+        assertArrayEquals(expected, actual, "Snapshot visibility query differs");
+    }
+
+    // Mostly small boxes, where the grid skips most cells, and now and then one reaching outside the world
+    private float[] randomBox() {
+        float size = this.random.nextInt(4) == 0 ? 120.0f : 12.0f;
+        float minX = this.random.nextFloat() * (this.world.width + 40) - 20;
+        float minY = this.random.nextFloat() * (this.world.depth + 40) - 20;
+        float minZ = this.random.nextFloat() * (this.world.height + 40) - 20;
+        return new float[]{minX, minY, minZ, minX + this.random.nextFloat() * size, minY + this.random.nextFloat() * size, minZ + this.random.nextFloat() * size};
+    }
+
+    private static EntityGrid.CellTest intersects(float[] box) {
+        return (minX, minY, minZ, maxX, maxY, maxZ) -> minX < box[3] && maxX > box[0] && minY < box[4] && maxY > box[1] && minZ < box[5] && maxZ > box[2];
+    }
+
+    private static void mark(boolean[] found, int i) {
+        assertFalse(found[i], "Zombie " + i + " was reported twice");
+        found[i] = true;
+    }
+}
@@ -0,0 +1,185 @@
+package me.kalmemarq.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArenaAllocatorTest {
+    @Test
+    public void allocatesIntoTheSmallestBlockThatFits() {
+        ArenaAllocator arena = new ArenaAllocator(100);
+        ArenaAllocator.Allocation a = arena.allocate(10);
+        ArenaAllocator.Allocation gap1 = arena.allocate(30);
+        ArenaAllocator.Allocation b = arena.allocate(10);
+        ArenaAllocator.Allocation gap2 = arena.allocate(15);
+        arena.allocate(10);
+        arena.free(gap1);
+        arena.free(gap2);
+
+        // Free blocks of 30, 15 and the 25 at the end; 12 fits best into the 15
+        ArenaAllocator.Allocation allocation = arena.allocate(12);
+        assertEquals(b.getOffset() + b.getSize(), allocation.getOffset());
+        // An exact fit takes the 30 whole
+        assertEquals(a.getSize(), arena.allocate(30).getOffset());
+        assertNull(arena.allocate(26));
+    }
+
+    @Test
+    public void freeMergesWithBothNeighbours() {
+        ArenaAllocator arena = new ArenaAllocator(30);
+        ArenaAllocator.Allocation a = arena.allocate(10);
+        ArenaAllocator.Allocation b = arena.allocate(10);
+        ArenaAllocator.Allocation c = arena.allocate(10);
+
+        arena.free(a);
+        arena.free(c);
+        assertEquals(2, arena.getFreeBlockCount());
+        assertEquals(10, arena.getLargestFreeBlock());
+
+        arena.free(b);
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(30, arena.getLargestFreeBlock());
+        assertEquals(0, arena.getUsed());
+        assertEquals(0.0f, arena.getFragmentation());
+    }
+
+    @Test
+    public void growExtendsTheFreeBlockAtTheEnd() {
+        ArenaAllocator arena = new ArenaAllocator(20);
+        arena.allocate(15);
+        assertNull(arena.allocate(10));
+
+        arena.grow(40);
+        assertEquals(40, arena.getCapacity());
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(25, arena.getLargestFreeBlock());
+        assertEquals(15, arena.allocate(25).getOffset());
+    }
+
+    @Test
+    public void compactMovesLiveAllocationsDown() {
+        ArenaAllocator arena = new ArenaAllocator(100);
+        ArenaAllocator.Allocation a = arena.allocate(10);
+        ArenaAllocator.Allocation b = arena.allocate(20);
+        ArenaAllocator.Allocation c = arena.allocate(30);
+        ArenaAllocator.Allocation d = arena.allocate(5);
+        arena.free(a);
+        arena.free(c);
+
+        List<int[]> moves = new ArrayList<>();
+        arena.compact((fromOffset, toOffset, size) -> moves.add(new int[]{fromOffset, toOffset, size}));
+
+        assertEquals(2, moves.size());
+        assertArrayEquals(new int[]{10, 0, 20}, moves.get(0));
+        assertArrayEquals(new int[]{60, 20, 5}, moves.get(1));
+        assertEquals(0, b.getOffset());
+        assertEquals(20, d.getOffset());
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(75, arena.getLargestFreeBlock());
+
+        // Handles stay valid after the move
+        arena.free(b);
+        arena.free(d);
+        assertEquals(0, arena.getUsed());
+        assertEquals(1, arena.getFreeBlockCount());
+    }
+
+    @Test
+    public void compactWithoutHolesMovesNothing() {
+        ArenaAllocator arena = new ArenaAllocator(50);
+        arena.allocate(10);
+        arena.allocate(10);
+        arena.compact((fromOffset, toOffset, size) -> {
+            throw new AssertionError("Nothing should move");
+        });
+        assertEquals(30, arena.getLargestFreeBlock());
+    }
+
+    @Test
+    public void freeingTwiceThrows() {
+        ArenaAllocator arena = new ArenaAllocator(10);
+        ArenaAllocator.Allocation allocation = arena.allocate(5);
+        arena.free(allocation);
+        assertTrue(allocation.isFreed());
+        assertThrows(IllegalStateException.class, () -> arena.free(allocation));
+        assertEquals(0, arena.getUsed());
+    }
+
+    @Test
+    public void freeingAnotherArenasAllocationThrows() {
+        ArenaAllocator arena = new ArenaAllocator(10);
+        ArenaAllocator other = new ArenaAllocator(10);
+        arena.allocate(5);
+        ArenaAllocator.Allocation foreign = other.allocate(5);
+        assertThrows(IllegalStateException.class, () -> arena.free(foreign));
+        assertFalse(foreign.isFreed());
+        assertEquals(5, arena.getUsed());
+    }
+
+    @Test
+    public void allocatingNothingThrows() {
+        ArenaAllocator arena = new ArenaAllocator(10);
+        assertThrows(IllegalArgumentException.class, () -> arena.allocate(0));
+    }
+
+    // Random allocations and frees, compacting or growing when nothing fits, never hand out overlapping ranges
+    @Test
+    public void randomOperationsStayConsistent() {
+        Random random = new Random(5L);
+        ArenaAllocator arena = new ArenaAllocator(10_000);
+        List<ArenaAllocator.Allocation> live = new ArrayList<>();
+
+        for (int operation = 0; operation < 50_000; ++operation) {
+            if (!live.isEmpty() && (live.size() > 400 || random.nextInt(3) == 0)) {
+                arena.free(live.remove(random.nextInt(live.size())));
+            } else {
+                int size = 1 + random.nextInt(400);
+                ArenaAllocator.Allocation allocation = arena.allocate(size);
+                if (allocation == null) {
+                    if (arena.getFree() >= size) {
+                        arena.compact((fromOffset, toOffset, moved) -> {});
+                    } else {
+                        arena.grow(arena.getCapacity() * 2);
+                    }
+                    allocation = arena.allocate(size);
+                }
+                assertNotNull(allocation);
+                live.add(allocation);
+            }
+
+            if (operation % 1000 == 0) {
+                assertNoOverlap(arena, live);
+            }
+        }
+
+        for (ArenaAllocator.Allocation allocation : live) {
+            arena.free(allocation);
+        }
+        assertEquals(0, arena.getUsed());
+        assertEquals(1, arena.getFreeBlockCount());
+    }
+
+    private static void assertNoOverlap(ArenaAllocator arena, List<ArenaAllocator.Allocation> live) {
+        boolean[] owned = new boolean[arena.getCapacity()];
+        int used = 0;
+        for (ArenaAllocator.Allocation allocation : live) {
+            assertTrue(allocation.getOffset() + allocation.getSize() <= arena.getCapacity());
+            for (int i = allocation.getOffset(); i < allocation.getOffset() + allocation.getSize(); ++i) {
+                assertFalse(owned[i], "Two allocations share unit " + i);
+                owned[i] = true;
+            }
+            used += allocation.getSize();
+        }
+        assertEquals(used, arena.getUsed());
+    }
+}